@@ -0,0 +1,103 @@
+package benchmarks;
+
+import model.CompactSentenceList;
+import model.Options;
+import model.SentenceList;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Compares the import of sentences from a ResultSet with different preprocessingParallelism.
+ * The ResultSet serves generated sentences from memory, so only the preprocessing is measured and not the database.
+ * All imports must give the same sentences in the same order.
+ * <p>
+ * Run with java benchmarks.PreprocessingBenchmark [sentences] [rounds] [parallelism...]
+ *
+ * @author Martin Stoffers
+ */
+public class PreprocessingBenchmark {
+
+    /**
+     * @param args Optional number of generated sentences, rounds and preprocessingParallelism values,
+     *             default 500000, 3 and 1, 2, 4 and all available processors
+     * @throws Exception Thrown, if the imports differ
+     */
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 500000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        String[] parallelisms = (args.length > 2)
+                ? Arrays.copyOfRange(args, 2, args.length) : new String[]{"1", "2", "4", "0"};
+        List<String> sentences = TokenizerBenchmark.generate(count, new Random(42));
+        System.out.println("Sentences: " + count + ", rounds: " + rounds
+                + ", processors: " + Runtime.getRuntime().availableProcessors());
+
+        SentenceList reference = null;
+        for (String parallelism : parallelisms) {
+            Properties properties = new Properties();
+            properties.setProperty("filter", "ignoreCases");
+            properties.setProperty("editUmlauts", "true");
+            properties.setProperty("reduceMethod", "off");
+            properties.setProperty("minimumMatchLength", "1");
+            properties.setProperty("similarityThreshold", "0.5");
+            properties.setProperty("preprocessingParallelism", parallelism);
+            Options opt = new Options(properties);
+
+            long best = Long.MAX_VALUE;
+            long bestCompact = Long.MAX_VALUE;
+            SentenceList list = null;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                list = new SentenceList(resultSet(sentences), opt);
+                best = Math.min(best, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                CompactSentenceList compact = new CompactSentenceList(resultSet(sentences), opt);
+                bestCompact = Math.min(bestCompact, System.nanoTime() - start);
+                if (compact.size() != count) {
+                    throw new Exception("CompactSentenceList with parallelism " + parallelism + " lost sentences");
+                }
+            }
+            if (reference == null) {
+                reference = list;
+            } else if (!reference.equals(list)) {
+                throw new Exception("Parallelism " + parallelism + " differs from parallelism " + parallelisms[0]);
+            }
+            System.out.println("preprocessingParallelism=" + parallelism
+                    + ": SentenceList " + (best / 1000000) + " ms, " + (long) (count / (best / 1e9)) + " sentences/s"
+                    + ", CompactSentenceList " + (bestCompact / 1000000) + " ms, "
+                    + (long) (count / (bestCompact / 1e9)) + " sentences/s");
+        }
+    }
+
+    /**
+     * @return ResultSet with the columns s_id and sentence of the given sentences, s_id is the index
+     */
+    private static ResultSet resultSet(final List<String> sentences) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new InvocationHandler() {
+                    private int row = -1;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("next")) {
+                            return ++row < sentences.size();
+                        } else if (name.equals("getInt")) {
+                            return row;
+                        } else if (name.equals("getString")) {
+                            return sentences.get(row);
+                        } else if (name.equals("close")) {
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+}
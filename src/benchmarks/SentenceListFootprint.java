@@ -0,0 +1,91 @@
+package benchmarks;
+
+import model.CompactSentenceList;
+import model.Options;
+import model.Sentence;
+import model.SentenceList;
+
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Compares the heap used by a {@link model.SentenceList} with the {@link model.CompactSentenceList}
+ * of the same preprocessed sentences. The sentences have 5 to 30 words of a vocabulary with a skewed distribution,
+ * so there are frequent and rare words like in a corpus.
+ * <p>
+ * Run with enough heap, e.g. java -Xmx8g benchmarks.SentenceListFootprint [sentences] [vocabulary]
+ *
+ * @author Martin Stoffers
+ */
+public class SentenceListFootprint {
+
+    /**
+     * @param args Optional number of sentences and distinct words, default 1,000,000 and 500,000
+     * @throws Exception Thrown, if the options are invalid
+     */
+    public static void main(String[] args) throws Exception {
+        int sentences = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int vocabulary = (args.length > 1) ? Integer.parseInt(args[1]) : 500000;
+        System.out.println("Sentences: " + sentences + ", vocabulary: " + vocabulary);
+
+        Properties properties = new Properties();
+        properties.setProperty("filter", "off");
+        properties.setProperty("reduceMethod", "off");
+        properties.setProperty("minimumMatchLength", "1");
+        properties.setProperty("similarityThreshold", "0.5");
+        Options opt = new Options(properties);
+
+        long before = usedHeap();
+        SentenceList list = new SentenceList(sentences);
+        Random random = new Random(42);
+        for (int s = 0; s < sentences; s++) {
+            list.add(new Sentence(s, generate(random, vocabulary), opt));
+        }
+        long listBytes = usedHeap() - before;
+        report("SentenceList", listBytes, sentences);
+        list = null;
+
+        before = usedHeap();
+        CompactSentenceList compact = new CompactSentenceList();
+        random = new Random(42);
+        for (int s = 0; s < sentences; s++) {
+            compact.add(new Sentence(s, generate(random, vocabulary), opt));
+        }
+        compact.trimToSize();
+        long compactBytes = usedHeap() - before;
+        report("CompactSentenceList", compactBytes, compact.size());
+
+        System.out.println("Saving: " + (100 - (100 * compactBytes / Math.max(1, listBytes))) + "%");
+    }
+
+    /**
+     * @return A sentence of 5 to 30 words, word k is drawn with a probability falling with k
+     */
+    static String generate(Random random, int vocabulary) {
+        int words = 5 + random.nextInt(26);
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            double r = random.nextDouble();
+            sb.append(w > 0 ? " " : "").append("Wort").append((int) (vocabulary * r * r * r));
+        }
+        return sb.append('.').toString();
+    }
+
+    /**
+     * Prints the heap usage of one representation
+     */
+    private static void report(String name, long bytes, int sentences) {
+        System.out.println(name + ": " + (bytes / (1024 * 1024)) + " MB, " + (bytes / (double) sentences) + " bytes per sentence");
+    }
+
+    /**
+     * @return Used heap after a garbage collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import model.Options;
+import model.Sentence;
+import model.SentenceList;
+import similarity.SimilarityMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.LogManager;
+
+/**
+ * Compares the similarity kernels strings, ids, bitset and earlyexit on generated sentences.
+ * The words are drawn from a vocabulary of the given size with a Zipf like distribution,
+ * like a word list reduced to rare words.
+ * Every kernel computes all pairs in mode bruteforce, the best of several rounds is reported.
+ * <p>
+ * Run with java benchmarks.SimilarityKernelBenchmark [sentences] [vocabulary] [rounds]
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityKernelBenchmark {
+
+    /**
+     * @param args Optional number of sentences, size of the vocabulary and number of rounds, default 4000, 2000 and 5
+     * @throws Exception Thrown, if the options are invalid
+     */
+    public static void main(String[] args) throws Exception {
+        int sentences = (args.length > 0) ? Integer.parseInt(args[0]) : 4000;
+        int vocabulary = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        LogManager.getLogManager().reset();
+
+        SentenceList sentenceList = generate(sentences, vocabulary, new Random(42));
+        long pairs = ((long) sentences * (sentences - 1)) / 2;
+        System.out.println("Sentences: " + sentences + ", vocabulary: " + vocabulary + ", pairs: " + pairs);
+
+        for (String kernel : new String[]{"strings", "ids", "bitset", "earlyexit"}) {
+            Properties properties = new Properties();
+            properties.setProperty("filter", "ignoreCases");
+            properties.setProperty("reduceMethod", "off");
+            properties.setProperty("minimumMatchLength", "1");
+            properties.setProperty("similarityThreshold", "0.5");
+            properties.setProperty("similarityMode", "bruteforce");
+            properties.setProperty("similarityKernel", kernel);
+            Options opt = new Options(properties);
+
+            long best = Long.MAX_VALUE;
+            int found = 0;
+            for (int round = 0; round < rounds; round++) {
+                SimilarityMatrix matrix = new SimilarityMatrix(sentenceList, opt);
+                PrintStream out = System.out;
+                System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                long start = System.nanoTime();
+                try {
+                    matrix.calculateSimilarity();
+                } finally {
+                    System.setOut(out);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                found = matrix.getSimilarityMatrix().size();
+            }
+            System.out.println(kernel + ": " + (best / 1000000) + " ms, "
+                    + (long) (pairs / (best / 1e9)) + " pairs/s, " + found + " similarities");
+        }
+    }
+
+    /**
+     * Generates sentences of 3 to 12 words
+     */
+    static SentenceList generate(int sentences, int vocabulary, Random random) {
+        SentenceList sentenceList = new SentenceList(sentences);
+        for (int i = 0; i < sentences; i++) {
+            int words = 3 + random.nextInt(10);
+            List<String> sentence = new ArrayList<String>(words);
+            int length = 0;
+            for (int k = 0; k < words; k++) {
+                // Zipf like: small ranks are much more likely
+                int rank = (int) Math.pow(vocabulary, random.nextDouble()) - 1;
+                String word = "word" + rank;
+                sentence.add(word);
+                length += word.length() + 1;
+            }
+            sentenceList.add(new Sentence(i + 1, length, sentence));
+        }
+        return sentenceList;
+    }
+}
@@ -0,0 +1,97 @@
+package benchmarks;
+
+import model.Options;
+import model.SentenceList;
+import similarity.SimilarityMatrix;
+import similarity.SimilarityMeasures;
+import similarity.SimilarityResults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.LogManager;
+
+/**
+ * Compares the similarity measures weighted, jaccard, overlap and cosine on generated sentences.
+ * Every measure computes all pairs in the modes bruteforce, index, window and join,
+ * the best of several rounds is reported. The pruned modes must find the same similarities as bruteforce.
+ * <p>
+ * Run with java benchmarks.SimilarityMeasureBenchmark [sentences] [vocabulary] [rounds] [threshold]
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityMeasureBenchmark {
+
+    /**
+     * @param args Optional number of sentences, size of the vocabulary, number of rounds and threshold,
+     *             default 4000, 2000, 5 and 0.5
+     * @throws Exception Thrown, if the options are invalid or a pruned mode differs from bruteforce
+     */
+    public static void main(String[] args) throws Exception {
+        int sentences = (args.length > 0) ? Integer.parseInt(args[0]) : 4000;
+        int vocabulary = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        String threshold = (args.length > 3) ? args[3] : "0.5";
+        LogManager.getLogManager().reset();
+
+        SentenceList sentenceList = SimilarityKernelBenchmark.generate(sentences, vocabulary, new Random(42));
+        long pairs = ((long) sentences * (sentences - 1)) / 2;
+        System.out.println("Sentences: " + sentences + ", vocabulary: " + vocabulary + ", pairs: " + pairs
+                + ", threshold: " + threshold);
+
+        for (String measure : SimilarityMeasures.NAMES) {
+            SimilarityResults reference = null;
+            for (String mode : new String[]{"bruteforce", "index", "window", "join"}) {
+                Properties properties = new Properties();
+                properties.setProperty("filter", "ignoreCases");
+                properties.setProperty("reduceMethod", "off");
+                properties.setProperty("minimumMatchLength", "1");
+                properties.setProperty("similarityThreshold", threshold);
+                properties.setProperty("similarityMode", mode);
+                properties.setProperty("similarityMeasure", measure);
+                Options opt = new Options(properties);
+
+                long best = Long.MAX_VALUE;
+                SimilarityResults found = null;
+                for (int round = 0; round < rounds; round++) {
+                    SimilarityMatrix matrix = new SimilarityMatrix(sentenceList, opt);
+                    PrintStream out = System.out;
+                    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                    long start = System.nanoTime();
+                    try {
+                        matrix.calculateSimilarity();
+                    } finally {
+                        System.setOut(out);
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                    found = matrix.getSimilarityMatrix();
+                }
+                if (reference == null) {
+                    reference = found;
+                } else if (!same(reference, found)) {
+                    throw new Exception("Mode " + mode + " differs from bruteforce for measure " + measure);
+                }
+                System.out.println(measure + " " + mode + ": " + (best / 1000000) + " ms, "
+                        + (long) (pairs / (best / 1e9)) + " pairs/s, " + found.size() + " similarities");
+            }
+        }
+    }
+
+    /**
+     * @return True if both results contain the same pairs with the same similarities
+     */
+    private static boolean same(SimilarityResults expected, SimilarityResults actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int row = 0; row < expected.size(); row++) {
+            if (expected.getSentenceId1(row) != actual.getSentenceId1(row)
+                    || expected.getSentenceId2(row) != actual.getSentenceId2(row)
+                    || expected.getSimilarity(row) != actual.getSimilarity(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import similarity.SimilarityEntry;
+import similarity.SimilarityResults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap used by an {@link java.util.ArrayList} of {@link similarity.SimilarityEntry}
+ * with the columnar {@link similarity.SimilarityResults}.
+ * <p>
+ * Run with enough heap, e.g. java -Xmx4g benchmarks.SimilarityResultsFootprint [entries]
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityResultsFootprint {
+
+    /**
+     * @param args Optional number of entries, default 10,000,000
+     */
+    public static void main(String[] args) {
+        int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+        System.out.println("Entries: " + entries);
+
+        long before = usedHeap();
+        List<SimilarityEntry> list = new ArrayList<SimilarityEntry>();
+        for (int i = 0; i < entries; i++) {
+            list.add(new SimilarityEntry(i, i + 1, 0.5f + (i % 1000) / 2000.0f));
+        }
+        long listBytes = usedHeap() - before;
+        report("ArrayList<SimilarityEntry>", listBytes, entries);
+        list = null;
+
+        before = usedHeap();
+        SimilarityResults results = new SimilarityResults();
+        for (int i = 0; i < entries; i++) {
+            results.add(i, i + 1, 0.5f + (i % 1000) / 2000.0f);
+        }
+        long columnBytes = usedHeap() - before;
+        report("SimilarityResults", columnBytes, results.size());
+
+        System.out.println("Saving: " + (100 - (100 * columnBytes / Math.max(1, listBytes))) + "%");
+    }
+
+    /**
+     * Prints the heap usage of one representation
+     */
+    private static void report(String name, long bytes, int entries) {
+        System.out.println(name + ": " + (bytes / (1024 * 1024)) + " MB, " + (bytes / (double) entries) + " bytes per entry");
+    }
+
+    /**
+     * @return Used heap after a garbage collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
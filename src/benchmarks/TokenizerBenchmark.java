@@ -0,0 +1,113 @@
+package benchmarks;
+
+import model.Options;
+import model.Sentence;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Compares the tokenizers scan and regex of {@link model.Sentence} on generated sentences or on a file
+ * with one sentence per line. Both tokenizers split the same sentences with every filter,
+ * the best of several rounds is reported in sentences per second. Both must find the same words.
+ * <p>
+ * Run with java benchmarks.TokenizerBenchmark [sentences|file] [rounds]
+ *
+ * @author Martin Stoffers
+ */
+public class TokenizerBenchmark {
+
+    /**
+     * Words of the generated sentences, with the punctuation marks and special cases of the cleanup rules
+     */
+    private static final String[] WORDS = {"Der", "die", "und", "Häuser", "Straße", "Öl", "über", "Bürgermeister",
+            "Präsident", "sagte", "am", "Montag", "in", "Berlin", "Prozent", "Euro", "-Jahr", "Bund:", "Zeit.",
+            "1998.", "12:30", "(AFP)", "\"Wir", "haben\"", "Ja,", "Nein!", "Wie?", "A", "->", "&", "+", "10%",
+            "Jahre;", "[1]", "{x}", "Nord-Süd."};
+
+    /**
+     * @param args Optional number of generated sentences or a file with one sentence per line and
+     *             the number of rounds, default 200000 and 5
+     * @throws Exception Thrown, if the file could not be read or the tokenizers differ
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> sentences;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            sentences = read(args[0]);
+        } else {
+            sentences = generate((args.length > 0) ? Integer.parseInt(args[0]) : 200000, new Random(42));
+        }
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        System.out.println("Sentences: " + sentences.size() + ", rounds: " + rounds);
+
+        for (String filter : new String[]{"off", "ignoreCases"}) {
+            for (String umlauts : new String[]{"false", "true"}) {
+                List<Sentence> reference = null;
+                for (String tokenizer : new String[]{"regex", "scan"}) {
+                    Properties properties = new Properties();
+                    properties.setProperty("filter", filter);
+                    properties.setProperty("editUmlauts", umlauts);
+                    properties.setProperty("tokenizer", tokenizer);
+                    properties.setProperty("reduceMethod", "off");
+                    properties.setProperty("minimumMatchLength", "1");
+                    properties.setProperty("similarityThreshold", "0.5");
+                    Options opt = new Options(properties);
+
+                    long best = Long.MAX_VALUE;
+                    List<Sentence> split = null;
+                    for (int round = 0; round < rounds; round++) {
+                        split = new ArrayList<Sentence>(sentences.size());
+                        long start = System.nanoTime();
+                        for (int s = 0; s < sentences.size(); s++) {
+                            split.add(new Sentence(s, sentences.get(s), opt));
+                        }
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                    if (reference == null) {
+                        reference = split;
+                    } else if (!reference.equals(split)) {
+                        throw new Exception("Tokenizer " + tokenizer + " differs from regex with filter " + filter);
+                    }
+                    System.out.println(tokenizer + " filter=" + filter + " editUmlauts=" + umlauts + ": "
+                            + (best / 1000000) + " ms, " + (long) (sentences.size() / (best / 1e9)) + " sentences/s");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return All lines of the file
+     */
+    private static List<String> read(String file) throws IOException {
+        return Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates sentences of 5 to 30 words
+     *
+     * @param count Number of sentences
+     * @param random Source of the words
+     * @return Sentences
+     */
+    static List<String> generate(int count, Random random) {
+        List<String> sentences = new ArrayList<String>(count);
+        for (int s = 0; s < count; s++) {
+            int words = 5 + random.nextInt(26);
+            StringBuilder sb = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    sb.append(random.nextInt(20) == 0 ? "  " : " ");
+                }
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            sentences.add(sb.append('.').toString());
+        }
+        return sentences;
+    }
+}
@@ -0,0 +1,139 @@
+package benchmarks;
+
+import computations.WordCounter;
+import model.CompactSentenceList;
+import model.Options;
+import model.Sentence;
+import model.SentenceList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Measures the scaling of the {@link computations.WordCounter} from 1 to all available processors
+ * on a {@link model.SentenceList} and a {@link model.CompactSentenceList} of generated sentences.
+ * The counting with a HashMap of boxed counts is measured as baseline. All counts must be the same.
+ * <p>
+ * Run with enough heap, e.g. java -Xmx8g benchmarks.WordCountBenchmark [sentences] [vocabulary] [rounds]
+ *
+ * @author Martin Stoffers
+ */
+public class WordCountBenchmark {
+
+    /**
+     * @param args Optional number of sentences, distinct words and rounds, default 1,000,000, 500,000 and 5
+     * @throws Exception Thrown, if the counts differ
+     */
+    public static void main(String[] args) throws Exception {
+        int sentences = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int vocabulary = (args.length > 1) ? Integer.parseInt(args[1]) : 500000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("Sentences: " + sentences + ", vocabulary: " + vocabulary + ", rounds: " + rounds
+                + ", processors: " + processors);
+
+        Properties properties = new Properties();
+        properties.setProperty("filter", "off");
+        properties.setProperty("reduceMethod", "off");
+        properties.setProperty("minimumMatchLength", "1");
+        properties.setProperty("similarityThreshold", "0.5");
+        Options opt = new Options(properties);
+        SentenceList sentenceList = new SentenceList(sentences);
+        CompactSentenceList corpus = new CompactSentenceList();
+        Random random = new Random(42);
+        for (int s = 0; s < sentences; s++) {
+            Sentence sentence = new Sentence(s, SentenceListFootprint.generate(random, vocabulary), opt);
+            sentenceList.add(sentence);
+            corpus.add(sentence);
+        }
+        corpus.trimToSize();
+
+        long best = Long.MAX_VALUE;
+        HashMap<String, Long> reference = null;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            reference = countBoxed(sentenceList);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println("HashMap<String, Long>: " + (best / 1000000) + " ms");
+
+        PrintStream out = System.out;
+        for (int parallelism = 1; parallelism <= processors; parallelism = nextParallelism(parallelism, processors)) {
+            properties.setProperty("wordCountParallelism", String.valueOf(parallelism));
+            Options parallelOpt = new Options(properties);
+            long bestList = Long.MAX_VALUE;
+            long bestCorpus = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                try {
+                    long start = System.nanoTime();
+                    WordCounter listCounter = new WordCounter(sentenceList, parallelOpt);
+                    bestList = Math.min(bestList, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    WordCounter corpusCounter = new WordCounter(corpus, parallelOpt);
+                    bestCorpus = Math.min(bestCorpus, System.nanoTime() - start);
+
+                    if (!reference.equals(listCounter.getWordCounts()) || !reference.equals(corpusCounter.getWordCounts())) {
+                        throw new Exception("Counts with wordCountParallelism " + parallelism + " differ");
+                    }
+                } finally {
+                    System.setOut(out);
+                }
+            }
+            System.out.println("wordCountParallelism=" + parallelism
+                    + ": SentenceList " + (bestList / 1000000) + " ms (" + speedup(best, bestList) + "x)"
+                    + ", CompactSentenceList " + (bestCorpus / 1000000) + " ms (" + speedup(best, bestCorpus) + "x)");
+        }
+    }
+
+    /**
+     * Counts the words like the WordCounter did before, with containsKey, get and a boxed put for every word
+     *
+     * @return Words with more than one occurrence
+     */
+    private static HashMap<String, Long> countBoxed(SentenceList sentenceList) {
+        HashMap<String, Long> wordList = new HashMap<String, Long>();
+        for (Sentence sentence : sentenceList) {
+            for (int i = 1; i < sentence.size(); i++) {
+                String word = sentence.get(i);
+                if (word.length() > 69) {
+                    continue;
+                }
+                if (wordList.containsKey(word)) {
+                    long count = wordList.get(word);
+                    wordList.put(word, ++count);
+                } else {
+                    wordList.put(word, 1L);
+                }
+            }
+        }
+        HashMap<String, Long> counted = new HashMap<String, Long>();
+        for (String word : wordList.keySet()) {
+            if (wordList.get(word) > 1L) {
+                counted.put(word, wordList.get(word));
+            }
+        }
+        return counted;
+    }
+
+    /**
+     * @return Doubled parallelism, but all processors as last step
+     */
+    private static int nextParallelism(int parallelism, int processors) {
+        if (parallelism == processors) {
+            return processors + 1;
+        }
+        return Math.min(2 * parallelism, processors);
+    }
+
+    /**
+     * @return Speed up against the baseline with one decimal
+     */
+    private static double speedup(long baseline, long nanos) {
+        return Math.round(10.0 * baseline / Math.max(1, nanos)) / 10.0;
+    }
+}
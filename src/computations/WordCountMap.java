@@ -0,0 +1,137 @@
+package computations;
+
+/**
+ * Map from words to their counts for the {@link computations.WordCounter}.
+ * <p>
+ * The words are stored by open addressing with linear probing in one array, the counts as primitive longs
+ * in a second array, so adding a word is one probe sequence without boxing. The hash of every word is kept
+ * to compare and to grow without calling {@link String#hashCode()} again.
+ * Maps of several threads are summed up by {@link #addAll(WordCountMap)}.
+ *
+ * @author Martin Stoffers
+ */
+final class WordCountMap {
+
+    private String[] words;
+
+    private int[] hashes;
+
+    private long[] counts;
+
+    private int mask;
+
+    private int size = 0;
+
+    /**
+     * Initial capacity of the slots
+     */
+    private static final int CAPACITY = 1024;
+
+    WordCountMap() {
+        words = new String[CAPACITY];
+        hashes = new int[CAPACITY];
+        counts = new long[CAPACITY];
+        mask = CAPACITY - 1;
+    }
+
+    /**
+     * Adds to the count of a word
+     *
+     * @param word The word
+     * @param count Number of occurrences to add
+     */
+    void add(String word, long count) {
+        int hash = mix(word.hashCode());
+        int slot = hash & mask;
+        while (words[slot] != null) {
+            if (hashes[slot] == hash && words[slot].equals(word)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        words[slot] = word;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        // at most half of the slots are used
+        if (++size > words.length >> 1) {
+            grow();
+        }
+    }
+
+    /**
+     * Adds the counts of all words of another map
+     *
+     * @param other Map of another thread
+     */
+    void addAll(WordCountMap other) {
+        for (int slot = 0; slot < other.words.length; slot++) {
+            if (other.words[slot] != null) {
+                add(other.words[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Doubles the slots and inserts all words again
+     */
+    private void grow() {
+        String[] oldWords = words;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        int capacity = 2 * oldWords.length;
+        words = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (words[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                words[slot] = oldWords[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * @return Spreads the bits of the String hash, so similar words do not fill neighbouring slots
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return Number of distinct words
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of slots, see {@link #word(int)} and {@link #count(int)}
+     */
+    int capacity() {
+        return words.length;
+    }
+
+    /**
+     * @param slot Slot between 0 and {@link #capacity()}
+     * @return The word of the slot, null for an empty slot
+     */
+    String word(int slot) {
+        return words[slot];
+    }
+
+    /**
+     * @param slot Slot between 0 and {@link #capacity()}
+     * @return The count of the word of the slot
+     */
+    long count(int slot) {
+        return counts[slot];
+    }
+}
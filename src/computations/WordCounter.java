@@ -5,13 +5,22 @@
  */
 package computations;
 
+import model.CompactSentenceList;
 import model.Options;
 import model.Sentence;
+import model.SentenceImporter;
 import model.SentenceList;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -39,6 +48,11 @@ public class WordCounter {
      */
     private SentenceList sentenceList = null;
 
+    /**
+     * Contains the CompactSentenceList given to the constructor
+     */
+    private CompactSentenceList corpus = null;
+
     /**
      * Contains the resulting wordList
      */
@@ -61,76 +75,231 @@ public class WordCounter {
         start();
     }
 
+    /**
+     * Builds a hashmap indexed by all words there overall count.
+     * The occurrences are counted per word ID.
+     *
+     * @param corpus Contains a set of sentences returned by {@link sql.SqlObject#getCompactSentences}.
+     * @param opt Properties Options
+     */
+    public WordCounter(CompactSentenceList corpus, Options opt) {
+        this.corpus = corpus;
+        this.opt = opt;
+        start();
+    }
+
+    /**
+     * Builds a hashmap indexed by all words there overall count while the sentences are read.
+     * Every sentence is counted and dropped as soon as it is preprocessed, so only the word list grows with the corpus.
+     *
+     * @param set Contains the rows s_id and sentence returned by {@link sql.SqlObject#streamSentences()}
+     * @param opt Properties Options
+     * @throws SQLException Thrown, if ResultSet has an error or the preprocessing was interrupted
+     */
+    public WordCounter(ResultSet set, Options opt) throws SQLException {
+        this.opt = opt;
+        System.out.println("Calculate word list");
+        SentenceImporter importer = new SentenceImporter(set, opt);
+        WordCountMap counts = new WordCountMap();
+        int sentences = 0;
+        try {
+            Sentence[] batch;
+            while ((batch = importer.nextBatch()) != null) {
+                for (Sentence s: batch) {
+                    countWords(s, counts);
+                }
+                sentences += batch.length;
+            }
+        } finally {
+            importer.close();
+        }
+        report(sentences, addWords(counts));
+    }
+
     /**
      * Starts the the wordcounter on each sentence from ResultSet
      * <p>
-     * Will be the run method in the future threaded versions
+     * With a wordCountParallelism other than 1 the sentences are split into one part per thread,
+     * the counts of all parts are summed up before the words are checked and added.
      */
     private void start(){
         System.out.println("Calculate word list");
-        for (Sentence s: sentenceList) {
-            countWords(s);
+        int parallelism = opt.getWordCountParallelism();
+        if (parallelism == 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
         }
+        int sentences;
+        int removed;
+        if (corpus != null) {
+            sentences = corpus.size();
+            List<Callable<long[]>> parts = new ArrayList<Callable<long[]>>();
+            for (int part = 0; part < parallelism; part++) {
+                parts.add(new CorpusPart(corpus, part * (long) sentences / parallelism, (part + 1) * (long) sentences / parallelism));
+            }
+            long[] counts = null;
+            for (long[] partCounts : run(parts)) {
+                if (counts == null) {
+                    counts = partCounts;
+                } else {
+                    for (int id = 0; id < counts.length; id++) {
+                        counts[id] += partCounts[id];
+                    }
+                }
+            }
+            removed = addWords(corpus, counts);
+        } else {
+            sentences = sentenceList.size();
+            List<Callable<WordCountMap>> parts = new ArrayList<Callable<WordCountMap>>();
+            for (int part = 0; part < parallelism; part++) {
+                parts.add(new SentenceListPart(sentenceList, part * (long) sentences / parallelism, (part + 1) * (long) sentences / parallelism));
+            }
+            WordCountMap counts = null;
+            for (WordCountMap partCounts : run(parts)) {
+                if (counts == null) {
+                    counts = partCounts;
+                } else {
+                    counts.addAll(partCounts);
+                }
+            }
+            removed = addWords(counts);
+        }
+        report(sentences, removed);
+    }
 
-        int i = 0;
-        Iterator<Entry<String, Long>> iter = wordList.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<String, Long> entry = iter.next();
-            if(entry.getValue() == 1L){
-                iter.remove();
-                wordCount--;
-                i++;
+    /**
+     * Counts a single part on the calling thread and several parts on a pool of one thread per part
+     *
+     * @param parts Parts of the sentences
+     * @return Counts of every part in the order of the parts
+     */
+    private static <T> List<T> run(List<Callable<T>> parts) {
+        List<T> counts = new ArrayList<T>(parts.size());
+        if (parts.size() == 1) {
+            try {
+                counts.add(parts.get(0).call());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
             }
+            return counts;
         }
+        ExecutorService pool = Executors.newFixedThreadPool(parts.size());
+        try {
+            for (Future<T> future : pool.invokeAll(parts)) {
+                counts.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return counts;
+    }
 
-        System.out.println(i + " words with only a single occurrence removed.");
-        System.out.println("WordCount finished with " + sentenceList.size() + " sentences processed and " + wordCount + " words found");
+    /**
+     * Adds all counted words with more than one occurrence to the word list
+     *
+     * @param counts Counts of all words
+     * @return Number of counted words with only a single occurrence
+     */
+    private int addWords(WordCountMap counts) {
+        int removed = 0;
+        for (int slot = 0; slot < counts.capacity(); slot++) {
+            String word = counts.word(slot);
+            if (word != null && isCounted(word)) {
+                if (counts.count(slot) == 1L) {
+                    removed++;
+                } else {
+                    wordList.put(word, counts.count(slot));
+                }
+            }
+        }
+        wordCount = wordList.size();
+        return removed;
+    }
+
+    /**
+     * Adds all counted words with more than one occurrence to the word list
+     *
+     * @param corpus All sentences
+     * @param counts Count of every word ID
+     * @return Number of counted words with only a single occurrence
+     */
+    private int addWords(CompactSentenceList corpus, long[] counts) {
+        int removed = 0;
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0 && isCounted(corpus.getWord(id))) {
+                if (counts[id] == 1L) {
+                    removed++;
+                } else {
+                    wordList.put(corpus.getWord(id), counts[id]);
+                }
+            }
+        }
+        wordCount = wordList.size();
+        return removed;
+    }
+
+    /**
+     * Prints the result of the count
+     *
+     * @param sentences Number of sentences counted
+     * @param removed Number of words with only a single occurrence
+     */
+    private void report(int sentences, int removed) {
+        System.out.println(removed + " words with only a single occurrence removed.");
+        System.out.println("WordCount finished with " + sentences + " sentences processed and " + wordCount + " words found");
     }
 
     /**
      * Applies all possible options, like toLowerCase and editUmlauts to the sentence.
      * Afterwards the sentence will be spliced into words.
-     * All words will be added to a global HashMap with its amount of occurrence
+     * All words except the first will be added to the counts, they are checked by {@link #isCounted(String)}
+     * once all sentences are counted.
      *
      * @param sentence A whole sentence from a ResultSet
+     * @param counts Counts of the words
      */
-    private void countWords(Sentence sentence) {
-
+    private static void countWords(Sentence sentence, WordCountMap counts) {
         for (int i = 1; i < sentence.size(); i++) {
-            String word = sentence.get(i);
+            counts.add(sentence.get(i), 1L);
+        }
+    }
 
-            // If Word longer then 70 chars - skip word
-            if(word.length() > 69) {
-                continue;
-            }
+    /**
+     * @param word A word of a sentence
+     * @return False, if the word is too long or no noun, while only nouns are counted
+     */
+    private boolean isCounted(String word) {
+        // If Word longer then 70 chars - skip word
+        if(word.length() > 69) {
+            return false;
+        }
 
-            if(opt.isOnlyNouns()) {
-                try {
-                    // TODO More fixing...
-                    if(!(Character.isUpperCase(word.codePointAt(0)))) {
-                        continue;
-                    }
+        if(opt.isOnlyNouns()) {
+            try {
+                // TODO More fixing...
+                if(!(Character.isUpperCase(word.codePointAt(0)))) {
+                    return false;
                 }
-                catch(StringIndexOutOfBoundsException e){
-                    //System.out.println("Fehler in Wort >" + sentence.get(i) +"<");
-                    //System.out.println("Wortlänge " + sentence.get(i).length());
-                    //System.out.println("Wörter im Satz " + sentence.size());
-                    //System.out.println("Satz-Id: " + sentence.getId());
-                    //System.out.println("Satz: " + sentence.toString());
-                    //System.out.println();
-                }
-            }
-
-            if (wordList.containsKey(word)) {
-                long count = wordList.get(word);
-                wordList.put(word, ++count );
             }
-            else {
-                wordList.put(word, 1L);
-                //log.log(Level.INFO, "Word \"{0}\" added", sentence.get(i));
-                wordCount++;
+            catch(StringIndexOutOfBoundsException e){
+                //System.out.println("Fehler in Wort >" + sentence.get(i) +"<");
+                //System.out.println("Wortlänge " + sentence.get(i).length());
+                //System.out.println("Wörter im Satz " + sentence.size());
+                //System.out.println("Satz-Id: " + sentence.getId());
+                //System.out.println("Satz: " + sentence.toString());
+                //System.out.println();
             }
         }
+        return true;
     }
 
     /**
@@ -141,4 +310,61 @@ public class WordCounter {
     public HashMap<String, Long> getWordCounts() {
         return wordList;
     }
+
+    /**
+     * Counts the words of a range of a SentenceList
+     */
+    private static final class SentenceListPart implements Callable<WordCountMap> {
+
+        private final SentenceList sentenceList;
+
+        private final int from;
+
+        private final int to;
+
+        SentenceListPart(SentenceList sentenceList, long from, long to) {
+            this.sentenceList = sentenceList;
+            this.from = (int) from;
+            this.to = (int) to;
+        }
+
+        @Override
+        public WordCountMap call() {
+            WordCountMap counts = new WordCountMap();
+            for (int s = from; s < to; s++) {
+                countWords(sentenceList.get(s), counts);
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Counts the words of a range of a CompactSentenceList by word ID
+     */
+    private static final class CorpusPart implements Callable<long[]> {
+
+        private final CompactSentenceList corpus;
+
+        private final int from;
+
+        private final int to;
+
+        CorpusPart(CompactSentenceList corpus, long from, long to) {
+            this.corpus = corpus;
+            this.from = (int) from;
+            this.to = (int) to;
+        }
+
+        @Override
+        public long[] call() {
+            long[] counts = new long[corpus.vocabularySize()];
+            for (int s = from; s < to; s++) {
+                int length = corpus.length(s);
+                for (int i = 1; i < length; i++) {
+                    counts[corpus.getWordId(s, i)]++;
+                }
+            }
+            return counts;
+        }
+    }
 }
@@ -2,16 +2,29 @@ package main;
 
 import computations.ReduceWordlist;
 import computations.WordCounter;
+import metrics.Metrics;
+import model.CompactSentenceList;
 import model.Options;
-import model.SentenceList;
+import similarity.SimilarityCheckpoint;
+import similarity.SimilarityEstimate;
+import similarity.SimilarityFileSink;
 import similarity.SimilarityMatrix;
+import similarity.SimilarityStatistics;
 import sql.SqlObject;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -30,6 +43,12 @@ public class Main {
      * Sets up some global object, like property  and logger object
      * <p>
      * Please make sure, that credentials.properties an logging.properties are setup up correctly
+     * <p>
+     * Arguments of the form key=value override the values of credentials.properties.
+     * They are used to start the workers of a sharded similarity calculation.
+     * <p>
+     * The progress and the duration of every stage are registered as MBean and recorded as Flight Recorder events,
+     * see {@link metrics.Metrics}.
      *
      * @param args commandline arguments
      */
@@ -48,6 +67,15 @@ public class Main {
                 Properties properties = new Properties();
                 properties.load(stream);
                 stream.close();
+                for (String arg : args) {
+                    int split = arg.indexOf('=');
+                    if (split > 0) {
+                        properties.setProperty(arg.substring(0, split).trim(), arg.substring(split + 1).trim());
+                    }
+                }
+
+                Metrics metrics = Metrics.getInstance();
+                metrics.register();
 
                 Options opt = null;
                 try {
@@ -69,7 +97,7 @@ public class Main {
 
                         // create Database object
                         SqlObject currentdatabase = new SqlObject(server, port, user, pass, database, opt);
-                        SentenceList sentenceList = null;
+                        CompactSentenceList sentenceList = null;
                         WordCounter wordcounter = null;
                         HashMap<String, Double> wordlist = null;
                         SimilarityMatrix similarityMatrix = null;
@@ -81,17 +109,16 @@ public class Main {
                         if (opt.isUpdateWordCounts()) {
                             System.out.println();
 
-                            if (!currentdatabase.isTableEmpty("sentences")) {
+                            if (currentdatabase.isTableEmpty("sentences")) {
+                                System.out.println("Database " + database + " has no entries in table sentences - Skipping");
+                                System.exit(1);
+                            } else if (!opt.isStreamWordCounts()) {
                                 System.out.println("Get sentences from database " + database);
-                                long startTime = System.currentTimeMillis();
+                                metrics.startStage(Metrics.FETCH);
                                 currentdatabase.connect();
-                                sentenceList = currentdatabase.getSentences();
+                                sentenceList = currentdatabase.getCompactSentences();
                                 currentdatabase.close();
-                                long endTime = System.currentTimeMillis();
-                                log.info("Get sentences and sentence preprocessing took " + (endTime-startTime) + " ms.");
-                            } else {
-                                System.out.println("Database " + database + " has no entries in table sentences - Skipping");
-                                System.exit(1);
+                                log.info("Get sentences and sentence preprocessing took " + metrics.endStage(Metrics.FETCH) + " ms.");
                             }
                             if (!currentdatabase.isTableEmpty("word_frequency")) {
                                 System.out.println("Cleaning word_frequency table in database " + database);
@@ -99,18 +126,30 @@ public class Main {
                                 currentdatabase.cleanTable("word_frequency");
                                 currentdatabase.close();
                             }
-                            long startTime = System.currentTimeMillis();
-                            wordcounter = new WordCounter(sentenceList, opt);
-                            long endTime = System.currentTimeMillis();
-                            log.info("Word count calculation took " + (endTime-startTime) + " ms.");
+                            metrics.startStage(Metrics.WORD_COUNT);
+                            if (opt.isStreamWordCounts()) {
+                                // the sentences are counted while they are read and not kept
+                                System.out.println("Stream sentences from database " + database);
+                                currentdatabase.connect();
+                                ResultSet rows = currentdatabase.streamSentences();
+                                try {
+                                    wordcounter = new WordCounter(rows, opt);
+                                } finally {
+                                    rows.close();
+                                }
+                                currentdatabase.close();
+                            } else {
+                                wordcounter = new WordCounter(sentenceList, opt);
+                                metrics.addStageRows(sentenceList.size(), 0);
+                            }
+                            log.info("Word count calculation took " + metrics.endStage(Metrics.WORD_COUNT) + " ms.");
 
                             System.out.println("Populate word_frequency table in database " + database + ". Be patient...");
-                            startTime = System.currentTimeMillis();
+                            metrics.startStage(Metrics.INSERT);
                             currentdatabase.connect();
                             currentdatabase.insertWordCount(wordcounter.getWordCounts());
                             currentdatabase.close();
-                            endTime = System.currentTimeMillis();
-                            log.info("Populating to word_count table took " + (endTime-startTime) + " ms.");
+                            log.info("Populating to word_count table took " + metrics.endStage(Metrics.INSERT) + " ms.");
                         }
 
                         //Build similarity matrix
@@ -119,7 +158,7 @@ public class Main {
 
                             // reduce word list
                             if (!currentdatabase.isTableEmpty("word_frequency")) {
-                                long startTime = System.currentTimeMillis();
+                                metrics.startStage(Metrics.REDUCTION);
                                 currentdatabase.connect();
                                 if (opt.isPercent()) {
                                     System.out.println("Reduce word list to " + opt.getPercentValue());
@@ -129,8 +168,8 @@ public class Main {
                                     wordlist = ReduceWordlist.absoluteValues(currentdatabase, opt.getLowerLimit(), opt.getHigherLimit());
                                 }
                                 currentdatabase.close();
-                                long endTime = System.currentTimeMillis();
-                                log.info("Reduce to rare words took " + (endTime-startTime) + " ms.");
+                                metrics.addStageRows((wordlist != null) ? wordlist.size() : 0, 0);
+                                log.info("Reduce to rare words took " + metrics.endStage(Metrics.REDUCTION) + " ms.");
                             } else {
                                 System.out.println("Database " + database + " has no entries in table word_frequency - skipping");
                                 System.exit(1);
@@ -140,12 +179,11 @@ public class Main {
                             if(sentenceList == null) {
                                 if (!currentdatabase.isTableEmpty("sentences")) {
                                     System.out.println("Get sentences from database " + database + "\n");
-                                    long startTime = System.currentTimeMillis();
+                                    metrics.startStage(Metrics.FETCH);
                                     currentdatabase.connect();
-                                    sentenceList = currentdatabase.getSentences();
+                                    sentenceList = currentdatabase.getCompactSentences();
                                     currentdatabase.close();
-                                    long endTime = System.currentTimeMillis();
-                                    log.info("Get sentences and sentence preprocessing took " + (endTime-startTime) + " ms.");
+                                    log.info("Get sentences and sentence preprocessing took " + metrics.endStage(Metrics.FETCH) + " ms.");
                                 }
                                 else {
                                     System.out.println("Database " + database + " has no table sentences - Skipping");
@@ -153,44 +191,152 @@ public class Main {
                                 }
                             }
 
+                            if (opt.isByRange() || opt.isPercent()) {
+                                System.out.println("Calculating similarities for " + database + " with RareWords in mind... ");
+                                similarityMatrix = new SimilarityMatrix(sentenceList, wordlist, opt);
+                            } else {
+                                System.out.println("Calculating similarities for " + database);
+                                similarityMatrix = new SimilarityMatrix(sentenceList.toSentenceList(), opt);
+                            }
+
+                            // keep similarities of the last run, if only new sentences should be compared
+                            // and the last run used the same options and rare words
+                            long fingerprint = similarityMatrix.getResultFingerprint();
+                            long watermark = -1;
+                            if (opt.isIncrementalSimilarities() && !opt.isUpdateWordCounts()) {
+                                currentdatabase.connect();
+                                watermark = currentdatabase.getSimilarityWatermark(fingerprint);
+                                currentdatabase.close();
+                                if (watermark >= 0) {
+                                    System.out.println("Keeping similarities of sentences up to s_id " + watermark);
+                                } else {
+                                    System.out.println("No previous run with the same options and rare words - calculating all similarities");
+                                }
+                            }
+                            similarityMatrix.setWatermark(watermark);
+
+                            // only estimate the result, sentence_similarity is not touched
+                            if (opt.getSimilarityEstimateSample() > 0) {
+                                metrics.startStage(Metrics.SIMILARITY);
+                                SimilarityEstimate estimate = similarityMatrix.estimateSimilarity(
+                                        opt.getSimilarityEstimateSample(), opt.getSimilarityEstimateGranularity());
+                                System.out.println(estimate);
+                                log.info("Similarity estimate took " + metrics.endStage(Metrics.SIMILARITY) + " ms.");
+                                continue;
+                            }
+
+                            // continue an interrupted run
+                            SimilarityCheckpoint checkpoint = null;
+                            boolean resumed = false;
+                            if (!opt.getSimilarityCheckpointFile().isEmpty()) {
+                                checkpoint = new SimilarityCheckpoint(new File(opt.getSimilarityCheckpointFile()), opt.getSimilarityCheckpointInterval());
+                                resumed = similarityMatrix.setCheckpoint(checkpoint);
+                                if (resumed) {
+                                    System.out.println("Resume from checkpoint " + opt.getSimilarityCheckpointFile());
+                                }
+                            }
+
+                            // the worker of a shard only spills its similarities, the coordinator populates them
+                            if (opt.getSimilarityShard() >= 0) {
+                                calculateShard(similarityMatrix, opt);
+                                continue;
+                            }
+
                             // clear table
-                            if (!currentdatabase.isTableEmpty("sentence_similarity")) {
+                            if (watermark < 0 && !resumed && !currentdatabase.isTableEmpty("sentence_similarity")) {
                                 System.out.println("Cleaning sentence_similarity table in database " + database);
                                 currentdatabase.connect();
                                 currentdatabase.cleanTable("sentence_similarity");
                                 currentdatabase.close();
                             }
-
-                            if (opt.isByRange() || opt.isPercent()) {
-                                System.out.println("Calculating similarities for " + database + " with RareWords in mind... ");
-                                similarityMatrix = new SimilarityMatrix(sentenceList, wordlist, opt);
+                            metrics.startStage(Metrics.SIMILARITY);
+                            File spillFile = new File(opt.getSimilaritySpillFile());
+                            if (opt.getSimilarityShards() > 1) {
+                                runShards(database, args, opt);
+                            } else if (opt.isJdbcSink()) {
+                                System.out.println("Populate sentence_similarity table in database " + database + " while calculating");
+                                currentdatabase.connect();
+                                similarityMatrix.calculateSimilarity(currentdatabase.similarityWriter());
+                                currentdatabase.close();
+                            } else if (opt.isFileSink()) {
+                                System.out.println("Spill similarities to " + spillFile);
+                                if (resumed) {
+                                    SimilarityFileSink.truncate(spillFile, checkpoint.getSimilarityCount());
+                                }
+                                similarityMatrix.calculateSimilarity(new SimilarityFileSink(spillFile, resumed));
                             } else {
-                                System.out.println("Calculating similarities for " + database);
-                                similarityMatrix = new SimilarityMatrix(sentenceList, opt);
+                                similarityMatrix.calculateSimilarity();
+                            }
+                            metrics.addStageRows(similarityMatrix.getSimilarityCount(), 0);
+                            log.info("Similarity calculation took " + metrics.endStage(Metrics.SIMILARITY) + " ms.");
+                            if (opt.getSimilarityShards() == 1) {
+                                System.out.println(similarityMatrix.getStatistics());
+                                log.info(similarityMatrix.getStatistics().toString());
                             }
-                            long startTime = System.currentTimeMillis();
-                            similarityMatrix.calculateSimilarity();
-                            long endTime = System.currentTimeMillis();
-                            log.info("Similarity calculation took " + (endTime-startTime) + " ms.");
 
-                            if(similarityMatrix.getSimilarityMatrix().size() > 0) {
+                            if (opt.getSimilarityShards() > 1) {
                                 System.out.println("Populate sentence_similarity table in database " + database + ". Be patient...");
-                                startTime = System.currentTimeMillis();
+                                metrics.startStage(Metrics.INSERT);
+                                long count = 0;
+                                SimilarityStatistics statistics = new SimilarityStatistics();
                                 currentdatabase.connect();
-                                currentdatabase.insertSentenceSimilarities(similarityMatrix);
+                                for (int shard = 0; shard < opt.getSimilarityShards(); shard++) {
+                                    count += currentdatabase.insertSentenceSimilarities(shardFile(opt.getSimilaritySpillFile(), shard));
+                                    statistics.merge(readShardStatistics(similarityMatrix, opt, shard));
+                                }
                                 currentdatabase.close();
-                                endTime = System.currentTimeMillis();
-                                log.info("Populating to similarity table took " + (endTime-startTime) + " ms.");
+                                System.out.println(statistics);
+                                log.info(statistics.toString());
+                                long took = metrics.endStage(Metrics.INSERT);
+                                System.out.println(count + " similarities populated to sentence_similarity table");
+                                log.info("Populating " + opt.getSimilarityShards() + " shards to similarity table took " + took + " ms.");
+                                for (int shard = 0; shard < opt.getSimilarityShards(); shard++) {
+                                    Files.deleteIfExists(shardFile(opt.getSimilaritySpillFile(), shard).toPath());
+                                    Files.deleteIfExists(statisticsFile(opt, shard).toPath());
+                                    if (!opt.getSimilarityCheckpointFile().isEmpty()) {
+                                        Files.deleteIfExists(shardFile(opt.getSimilarityCheckpointFile(), shard).toPath());
+                                    }
+                                }
+                            }
+                            else if(similarityMatrix.getSimilarityCount() > 0 && opt.isJdbcSink()) {
+                                System.out.println(similarityMatrix.getSimilarityCount() + " similarities populated to sentence_similarity table");
+                            }
+                            else if(similarityMatrix.getSimilarityCount() > 0) {
+                                System.out.println("Populate sentence_similarity table in database " + database + ". Be patient...");
+                                metrics.startStage(Metrics.INSERT);
+                                currentdatabase.connect();
+                                if (opt.isFileSink()) {
+                                    currentdatabase.insertSentenceSimilarities(spillFile);
+                                } else {
+                                    currentdatabase.insertSentenceSimilarities(similarityMatrix);
+                                }
+                                currentdatabase.close();
+                                log.info("Populating to similarity table took " + metrics.endStage(Metrics.INSERT) + " ms.");
                             }
                             else {
                                 System.out.println("There is nothing to commit");
                             }
+
+                            long highestId = watermark;
+                            for (int i = 0; i < sentenceList.size(); i++) {
+                                highestId = Math.max(highestId, sentenceList.getId(i));
+                            }
+                            currentdatabase.connect();
+                            currentdatabase.setSimilarityWatermark(highestId, fingerprint);
+                            currentdatabase.close();
+                            if (checkpoint != null) {
+                                checkpoint.delete();
+                            }
                             System.out.println();
                         }
 
                     } catch (SQLException e) {
                         log.warning(e.toString());
                         System.exit(1);
+                    } catch (IOException e) {
+                        System.out.println("Error while writing similarities");
+                        log.warning(e.toString());
+                        System.exit(1);
                     }
                     if(!opt.isUpdateWordCounts() && !opt.isUpdateSimilarities()) {
                         System.out.println("There is nothing todo.");
@@ -209,4 +355,165 @@ public class Main {
             System.exit(1);
         }
     }
+
+    /**
+     * Calculates one shard of a sharded similarity calculation and spills it into
+     * the similaritySpillFile with the number of the shard appended
+     *
+     * @param similarityMatrix Matrix of the reduced sentences
+     * @param opt Options with similarityShard set
+     * @throws IOException Thrown, if the spill file or the checkpoint could not be written
+     */
+    private static void calculateShard(SimilarityMatrix similarityMatrix, Options opt) throws IOException {
+        final Logger log = Logger.getLogger(Main.class.getName());
+        File spillFile = shardFile(opt.getSimilaritySpillFile(), opt.getSimilarityShard());
+
+        SimilarityCheckpoint checkpoint = null;
+        boolean resumed = false;
+        if (!opt.getSimilarityCheckpointFile().isEmpty()) {
+            checkpoint = new SimilarityCheckpoint(shardFile(opt.getSimilarityCheckpointFile(), opt.getSimilarityShard()), opt.getSimilarityCheckpointInterval());
+            resumed = similarityMatrix.setCheckpoint(checkpoint);
+        }
+        if (resumed) {
+            System.out.println("Resume shard " + opt.getSimilarityShard() + " from checkpoint");
+            SimilarityFileSink.truncate(spillFile, checkpoint.getSimilarityCount());
+        }
+
+        Metrics metrics = Metrics.getInstance();
+        metrics.startStage(Metrics.SIMILARITY);
+        similarityMatrix.calculateSimilarity(new SimilarityFileSink(spillFile, resumed));
+        metrics.addStageRows(similarityMatrix.getSimilarityCount(), spillFile.length());
+        long took = metrics.endStage(Metrics.SIMILARITY);
+        writeShardStatistics(similarityMatrix, opt);
+        System.out.println(similarityMatrix.getSimilarityCount() + " similarities spilled to " + spillFile);
+        System.out.println(similarityMatrix.getStatistics());
+        log.info("Similarity calculation of shard " + opt.getSimilarityShard() + " took " + took + " ms.");
+    }
+
+    /**
+     * Starts one worker process per shard on this host and waits for all of them.
+     * Every worker runs this class with the same classpath, credentials.properties and arguments,
+     * its output is written next to its spill file with the suffix .log
+     *
+     * @param database Database the workers calculate
+     * @param args Arguments of the coordinator, passed to every worker before the options of the worker
+     * @param opt Options with similarityShards set
+     * @throws IOException Thrown, if a worker could not be started or failed
+     */
+    private static void runShards(String database, String[] args, Options opt) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+        System.out.println("Start " + opt.getSimilarityShards() + " worker processes");
+
+        Process[] workers = new Process[opt.getSimilarityShards()];
+        for (int shard = 0; shard < workers.length; shard++) {
+            List<String> command = new ArrayList<String>();
+            command.add(java);
+            command.add("-cp");
+            command.add(classpath);
+            command.add(Main.class.getName());
+            // later arguments override earlier ones
+            command.addAll(Arrays.asList(args));
+            command.add("databases=" + database);
+            command.add("updateWordCounts=false");
+            command.add("updateSimilarities=true");
+            command.add("similaritySink=file");
+            command.add("similarityShard=" + shard);
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(shardFile(opt.getSimilaritySpillFile(), shard).getPath() + ".log"));
+            workers[shard] = builder.start();
+        }
+
+        IOException failure = null;
+        for (int shard = 0; shard < workers.length; shard++) {
+            try {
+                int exit = workers[shard].waitFor();
+                if (exit != 0 && failure == null) {
+                    failure = new IOException("Shard " + shard + " failed with exit code " + exit);
+                }
+                System.out.println("Shard " + shard + " finished");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Process worker : workers) {
+                    worker.destroy();
+                }
+                throw new IOException("Interrupted while waiting for shard " + shard, e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes the {@link similarity.SimilarityStatistics} of the shard of this worker to its statistics file,
+     * together with the IDs of the first and the last sentence of the shard
+     *
+     * @param similarityMatrix Matrix of the calculated shard
+     * @param opt Options with similarityShard set
+     * @throws IOException Thrown, if the file could not be written
+     */
+    private static void writeShardStatistics(SimilarityMatrix similarityMatrix, Options opt) throws IOException {
+        int[] ids = similarityMatrix.getShardIds(opt.getSimilarityShard());
+        Properties properties = new Properties();
+        similarityMatrix.getStatistics().store(properties, "");
+        properties.setProperty("firstId", Integer.toString(ids[0]));
+        properties.setProperty("lastId", Integer.toString(ids[1]));
+        BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(statisticsFile(opt, opt.getSimilarityShard())));
+        try {
+            properties.store(stream, "similarity statistics of shard " + opt.getSimilarityShard());
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the statistics file of a shard and checks, that the worker split the same sentences as the coordinator
+     *
+     * @param similarityMatrix Matrix of the coordinator
+     * @param opt Options with similarityShards set
+     * @param shard Number of the shard
+     * @return Statistics of the shard
+     * @throws IOException Thrown, if the file could not be read or the worker covered other sentences
+     */
+    private static SimilarityStatistics readShardStatistics(SimilarityMatrix similarityMatrix, Options opt, int shard) throws IOException {
+        File file = statisticsFile(opt, shard);
+        Properties properties = new Properties();
+        BufferedInputStream stream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            properties.load(stream);
+        } finally {
+            stream.close();
+        }
+        int[] ids = similarityMatrix.getShardIds(shard);
+        String expected = ids[0] + "-" + ids[1];
+        String covered = properties.getProperty("firstId") + "-" + properties.getProperty("lastId");
+        if (!expected.equals(covered)) {
+            throw new IOException("Shard " + shard + " covers sentences " + covered + " instead of " + expected);
+        }
+        try {
+            return SimilarityStatistics.load(properties, "");
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid statistics file " + file, e);
+        }
+    }
+
+    /**
+     * @param path Path of a file used by a single process
+     * @param shard Number of the shard
+     * @return File of the given shard
+     */
+    private static File shardFile(String path, int shard) {
+        return new File(path + "." + shard);
+    }
+
+    /**
+     * @param opt Options with similarityShards set
+     * @param shard Number of the shard
+     * @return File holding the {@link similarity.SimilarityStatistics} of the given shard, next to its spill file
+     */
+    private static File statisticsFile(Options opt, int shard) {
+        return new File(shardFile(opt.getSimilaritySpillFile(), shard).getPath() + ".stats");
+    }
 }
@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one executed and committed JDBC batch, see {@link metrics.Metrics#startBatch()}
+ *
+ * @author Martin Stoffers
+ */
+@Name("rarewords.Batch")
+@Label("JDBC Batch")
+@Category("Rare Words")
+@Description("One JDBC batch inserted into a table")
+@StackTrace(false)
+public class BatchEvent extends jdk.jfr.Event {
+
+    @Label("Table")
+    String table;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes")
+    @Description("Bytes of all parameters of the batch, strings are counted by their characters")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    BatchEvent() {
+    }
+}
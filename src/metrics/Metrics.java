@@ -0,0 +1,413 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the live metrics of a run, shared by all computations of the process.
+ * <p>
+ * The durations of the stages are summed up in milliseconds. The progress of the similarity calculation
+ * is updated by the calculating thread once per row or wave, so the counters are only volatile.
+ * Rates and ETA are averages over the calculation, pairs skipped by a resumed checkpoint
+ * are done but do not count for the rates.
+ * <p>
+ * Every stage, JDBC batch and chunk of the similarity calculation is also recorded as Flight Recorder event,
+ * so a run with -XX:StartFlightRecording gives the timeline of all stages. The chunk events are disabled by default.
+ *
+ * @author Martin Stoffers
+ */
+public final class Metrics implements MetricsMXBean {
+
+    /**
+     * Logger object
+     */
+    private static final Logger log = Logger.getLogger(Metrics.class.getName());
+
+    /**
+     * Name of the MBean
+     */
+    public static final String OBJECT_NAME = "rarewords:type=Metrics";
+
+    /**
+     * Reading the sentences from the database, including their preprocessing
+     */
+    public static final String FETCH = "fetch";
+
+    /**
+     * Splitting the sentences into words, the part of {@link #FETCH} the reading thread spent splitting
+     * or waiting for the workers splitting the sentences
+     */
+    public static final String PREPROCESSING = "preprocessing";
+
+    /**
+     * Counting the words of all sentences
+     */
+    public static final String WORD_COUNT = "wordcount";
+
+    /**
+     * Reducing the word list to the rare words
+     */
+    public static final String REDUCTION = "reduction";
+
+    /**
+     * Calculating the similarities
+     */
+    public static final String SIMILARITY = "similarity";
+
+    /**
+     * Populating word_frequency or sentence_similarity
+     */
+    public static final String INSERT = "insert";
+
+    /**
+     * Stage name between the stages
+     */
+    private static final String IDLE = "idle";
+
+    /**
+     * Number of {@link metrics.SimilarityChunkEvent}s of a calculation
+     */
+    private static final long CHUNKS = 1000;
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    /**
+     * Milliseconds of every finished stage in the order of their first appearance
+     */
+    private final Map<String, Long> stageMillis = new LinkedHashMap<String, Long>();
+
+    private volatile String stage = IDLE;
+
+    private volatile long stageStart = 0;
+
+    /**
+     * Event of the running stage
+     */
+    private StageEvent stageEvent = null;
+
+    /**
+     * Rows of the running stage
+     */
+    private long stageRows = 0;
+
+    /**
+     * Bytes of the running stage
+     */
+    private long stageBytes = 0;
+
+    /**
+     * Time of stages interleaved with the running stage in nanoseconds
+     */
+    private long stageNested = 0;
+
+    private volatile long pairsTotal = 0;
+
+    private volatile long pairsDone = 0;
+
+    /**
+     * Pairs done before the start of this run, e.g. by a resumed checkpoint
+     */
+    private volatile long pairsSkipped = 0;
+
+    private volatile long candidates = 0;
+
+    private volatile long resultsFound = 0;
+
+    /**
+     * Start of the similarity calculation from {@link System#nanoTime()}
+     */
+    private volatile long calculationStart = 0;
+
+    /**
+     * End of the similarity calculation from {@link System#nanoTime()}, 0 while it is running
+     */
+    private volatile long calculationEnd = 0;
+
+    /**
+     * Event of the current chunk of the calculation
+     */
+    private SimilarityChunkEvent chunk = null;
+
+    /**
+     * Minimum number of pairs of a chunk
+     */
+    private long chunkSize = 1;
+
+    private long chunkPairs = 0;
+
+    private long chunkCandidates = 0;
+
+    private Metrics() {
+    }
+
+    /**
+     * @return Metrics of this process
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server under {@link #OBJECT_NAME}.
+     * A failed registration is only logged, the run continues without MBean.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            log.warning("Could not register metrics MBean: " + e);
+        }
+    }
+
+    /**
+     * Starts a stage, which becomes the running stage
+     *
+     * @param name Name of the stage
+     */
+    public synchronized void startStage(String name) {
+        stageEvent = new StageEvent();
+        stageRows = 0;
+        stageBytes = 0;
+        stageNested = 0;
+        stageEvent.begin();
+        stageStart = System.nanoTime();
+        stage = name;
+    }
+
+    /**
+     * Finishes the running stage and adds its duration
+     *
+     * @param name Name of the stage
+     * @return Duration of the stage in milliseconds
+     */
+    public synchronized long endStage(String name) {
+        long millis = (System.nanoTime() - stageStart) / 1000000L;
+        stage = IDLE;
+        addStageMillis(name, millis);
+        if (stageEvent != null) {
+            stageEvent.end();
+            if (stageEvent.shouldCommit()) {
+                stageEvent.stage = name;
+                stageEvent.rows = stageRows;
+                stageEvent.bytes = stageBytes;
+                stageEvent.nestedTime = stageNested;
+                stageEvent.commit();
+            }
+            stageEvent = null;
+        }
+        return millis;
+    }
+
+    /**
+     * Adds rows and bytes to the event of the running stage
+     *
+     * @param rows Number of rows read, processed or written
+     * @param bytes Number of bytes read or written
+     */
+    public synchronized void addStageRows(long rows, long bytes) {
+        stageRows += rows;
+        stageBytes += bytes;
+    }
+
+    /**
+     * Adds time to a stage without changing the running stage, for stages interleaved with each other
+     *
+     * @param name Name of the stage
+     * @param nanos Duration in nanoseconds
+     */
+    public synchronized void addStageTime(String name, long nanos) {
+        addStageMillis(name, nanos / 1000000L);
+        stageNested += nanos;
+    }
+
+    /**
+     * Starts the event of a JDBC batch
+     *
+     * @return Event to be passed to {@link #endBatch(BatchEvent, String, long, long)}
+     */
+    public BatchEvent startBatch() {
+        BatchEvent event = new BatchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records an executed and committed JDBC batch and adds its rows and bytes to the running stage
+     *
+     * @param event Event returned by {@link #startBatch()}
+     * @param table Table of the batch
+     * @param rows Number of rows of the batch
+     * @param bytes Bytes of all parameters of the batch
+     */
+    public void endBatch(BatchEvent event, String table, long rows, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = table;
+            event.rows = rows;
+            event.bytes = bytes;
+            event.commit();
+        }
+        addStageRows(rows, bytes);
+    }
+
+    private synchronized void addStageMillis(String name, long millis) {
+        Long before = stageMillis.get(name);
+        stageMillis.put(name, (before == null) ? millis : before + millis);
+    }
+
+    /**
+     * Starts the progress of a similarity calculation
+     *
+     * @param total Number of pairs of the calculation
+     * @param skipped Pairs done before, which are not calculated again
+     */
+    public void startCalculation(long total, long skipped) {
+        calculationStart = System.nanoTime();
+        calculationEnd = 0;
+        pairsTotal = total;
+        pairsSkipped = skipped;
+        pairsDone = skipped;
+        candidates = 0;
+        resultsFound = 0;
+        chunkSize = Math.max(1, (total - skipped) / CHUNKS);
+        startChunk();
+    }
+
+    private void startChunk() {
+        chunk = new SimilarityChunkEvent();
+        chunkPairs = 0;
+        chunkCandidates = 0;
+        chunk.begin();
+    }
+
+    /**
+     * Adds the progress of a row or a wave. Must be called by one thread only.
+     *
+     * @param pairs Number of pairs done
+     * @param scored Number of pairs scored by the kernel
+     * @param results Number of all similarities found so far
+     */
+    public void progress(long pairs, long scored, long results) {
+        pairsDone += pairs;
+        candidates += scored;
+        resultsFound = results;
+        if (pairsDone >= pairsTotal) {
+            calculationEnd = System.nanoTime();
+        }
+        if (chunk != null) {
+            chunkPairs += pairs;
+            chunkCandidates += scored;
+            if (chunkPairs >= chunkSize || calculationEnd != 0) {
+                chunk.end();
+                if (chunk.shouldCommit()) {
+                    chunk.pairs = chunkPairs;
+                    chunk.candidates = chunkCandidates;
+                    chunk.results = results;
+                    chunk.progress = (pairsTotal > 0) ? (double) pairsDone / pairsTotal : 1.0;
+                    chunk.commit();
+                }
+                chunk = null;
+                if (calculationEnd == 0) {
+                    startChunk();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getStage() {
+        return stage;
+    }
+
+    @Override
+    public long getStageElapsedMillis() {
+        return IDLE.equals(stage) ? 0 : (System.nanoTime() - stageStart) / 1000000L;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStageMillis() {
+        return new LinkedHashMap<String, Long>(stageMillis);
+    }
+
+    @Override
+    public long getPairsTotal() {
+        return pairsTotal;
+    }
+
+    @Override
+    public long getPairsDone() {
+        return pairsDone;
+    }
+
+    @Override
+    public long getCandidates() {
+        return candidates;
+    }
+
+    @Override
+    public long getResultsFound() {
+        return resultsFound;
+    }
+
+    @Override
+    public double getProgress() {
+        return (pairsTotal > 0) ? 100.0 * pairsDone / pairsTotal : 0.0;
+    }
+
+    /**
+     * @return Seconds since the start of the calculation up to its end
+     */
+    private double calculationSeconds() {
+        if (calculationStart == 0) {
+            return 0.0;
+        }
+        long end = (calculationEnd == 0) ? System.nanoTime() : calculationEnd;
+        return (end - calculationStart) / 1e9;
+    }
+
+    @Override
+    public double getPairsPerSecond() {
+        double seconds = calculationSeconds();
+        return (seconds > 0) ? (pairsDone - pairsSkipped) / seconds : 0.0;
+    }
+
+    @Override
+    public double getCandidatesPerSecond() {
+        double seconds = calculationSeconds();
+        return (seconds > 0) ? candidates / seconds : 0.0;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        long remaining = pairsTotal - pairsDone;
+        if (remaining <= 0) {
+            return 0;
+        }
+        double rate = getPairsPerSecond();
+        return (rate > 0) ? (long) Math.ceil(remaining / rate) : -1;
+    }
+
+    @Override
+    public long getHeapUsed() {
+        return heap().getUsed();
+    }
+
+    @Override
+    public long getHeapMax() {
+        return heap().getMax();
+    }
+
+    private static MemoryUsage heap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+}
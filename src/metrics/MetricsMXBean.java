@@ -0,0 +1,77 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * Live metrics of a run, registered as MBean by {@link metrics.Metrics#register()}
+ * and readable with jconsole or Java Mission Control
+ *
+ * @author Martin Stoffers
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return Name of the running stage, "idle" between the stages
+     */
+    String getStage();
+
+    /**
+     * @return Milliseconds since the start of the running stage, 0 between the stages
+     */
+    long getStageElapsedMillis();
+
+    /**
+     * @return Milliseconds spent in every finished stage, summed up over all databases
+     */
+    Map<String, Long> getStageMillis();
+
+    /**
+     * @return Number of pairs of the running similarity calculation
+     */
+    long getPairsTotal();
+
+    /**
+     * @return Number of pairs already compared or skipped
+     */
+    long getPairsDone();
+
+    /**
+     * @return Number of pairs scored by the kernel
+     */
+    long getCandidates();
+
+    /**
+     * @return Number of similarities above the threshold
+     */
+    long getResultsFound();
+
+    /**
+     * @return Percentage of the pairs already done
+     */
+    double getProgress();
+
+    /**
+     * @return Pairs done per second since the start of the calculation
+     */
+    double getPairsPerSecond();
+
+    /**
+     * @return Pairs scored per second since the start of the calculation
+     */
+    double getCandidatesPerSecond();
+
+    /**
+     * @return Expected seconds until all pairs are done, -1 if unknown
+     */
+    long getEtaSeconds();
+
+    /**
+     * @return Bytes of the used heap
+     */
+    long getHeapUsed();
+
+    /**
+     * @return Maximum bytes of the heap, -1 if undefined
+     */
+    long getHeapMax();
+}
@@ -0,0 +1,40 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a chunk of the similarity calculation, see {@link metrics.Metrics#progress(long, long, long)}.
+ * Disabled by default, it is enabled by the setting rarewords.SimilarityChunk#enabled=true.
+ *
+ * @author Martin Stoffers
+ */
+@Name("rarewords.SimilarityChunk")
+@Label("Similarity Chunk")
+@Category("Rare Words")
+@Description("Consecutive rows or waves of the similarity calculation, about a thousandth of all pairs")
+@Enabled(false)
+@StackTrace(false)
+class SimilarityChunkEvent extends jdk.jfr.Event {
+
+    @Label("Pairs")
+    @Description("Pairs done in this chunk")
+    long pairs;
+
+    @Label("Candidates")
+    @Description("Pairs scored by the kernel in this chunk")
+    long candidates;
+
+    @Label("Results")
+    @Description("Similarities found up to the end of this chunk")
+    long results;
+
+    @Label("Progress")
+    @Percentage
+    double progress;
+}
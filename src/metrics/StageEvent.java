@@ -0,0 +1,39 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a stage started by {@link metrics.Metrics#startStage(String)}
+ *
+ * @author Martin Stoffers
+ */
+@Name("rarewords.Stage")
+@Label("Stage")
+@Category("Rare Words")
+@Description("One stage of the computation of a database")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Rows")
+    @Description("Rows read, processed or written in this stage")
+    long rows;
+
+    @Label("Bytes")
+    @Description("Bytes read or written in this stage, strings are counted by their characters")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    @Label("Nested Time")
+    @Description("Time of stages interleaved with this stage, e.g. the preprocessing while fetching the sentences")
+    @Timespan(Timespan.NANOSECONDS)
+    long nestedTime;
+}
@@ -0,0 +1,254 @@
+package model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of preprocessed sentences.
+ * <p>
+ * Every distinct word is stored once in a vocabulary, the words of all sentences are stored as word IDs in one flat
+ * array. A sentence is the range of the word IDs between its offset and the offset of the next sentence, together with
+ * its sentence ID and initial length. Unlike a {@link model.SentenceList} there is no list and no String per word,
+ * so the words of a sentence cost 4 bytes each.
+ * <p>
+ * Callers needing strings get a read-only view of a sentence by {@link #get(int)}
+ * or a {@link model.Sentence} by {@link #getSentence(int)}.
+ *
+ * @author Martin Stoffers
+ */
+public class CompactSentenceList {
+
+    /**
+     * Word ID of every distinct word
+     */
+    private final HashMap<String, Integer> wordIds = new HashMap<String, Integer>();
+
+    /**
+     * Distinct words, indexed by their word ID
+     */
+    private String[] vocabulary = new String[1024];
+
+    private int vocabularySize = 0;
+
+    /**
+     * Word IDs of all sentences, one after another
+     */
+    private int[] words = new int[16384];
+
+    /**
+     * Start of every sentence in {@link #words}, the entry behind the last sentence is the end of the last sentence
+     */
+    private int[] offsets = new int[1025];
+
+    private int[] sentenceIds = new int[1024];
+
+    private int[] initialLengths = new int[1024];
+
+    private int size = 0;
+
+    /**
+     * Instantiate a new empty CompactSentenceList
+     */
+    public CompactSentenceList() {
+    }
+
+    /**
+     * Instantiate a new CompactSentenceList
+     *
+     * @param set Contains the result with all sentences from database
+     * @param opt properties object
+     * @throws SQLException Possibly thrown, in {@link CompactSentenceList#importResultSet}
+     */
+    public CompactSentenceList(ResultSet set, Options opt) throws SQLException {
+        importResultSet(set, opt);
+        trimToSize();
+    }
+
+    /**
+     * Reads and preprocesses the sentences in batches by a {@link model.SentenceImporter} like {@link model.SentenceList}.
+     * Every sentence is only kept as {@link model.Sentence} until its words are added.
+     *
+     * @param set Contains the result with all sentences from database
+     * @param opt properties object
+     * @throws SQLException Thrown, if ResultSet has an error or the preprocessing was interrupted
+     */
+    private void importResultSet(ResultSet set, Options opt) throws SQLException {
+        SentenceImporter importer = new SentenceImporter(set, opt);
+        try {
+            Sentence[] batch;
+            while ((batch = importer.nextBatch()) != null) {
+                for (Sentence sentence : batch) {
+                    add(sentence);
+                }
+            }
+        } finally {
+            importer.close();
+        }
+    }
+
+    /**
+     * Appends a sentence
+     *
+     * @param sentence Sentence with its ID, initial length and words
+     */
+    public void add(Sentence sentence) {
+        if (size == sentenceIds.length) {
+            int capacity = Math.max(16, 2 * size);
+            sentenceIds = Arrays.copyOf(sentenceIds, capacity);
+            initialLengths = Arrays.copyOf(initialLengths, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+        int end = offsets[size];
+        if (end + sentence.size() > words.length) {
+            words = Arrays.copyOf(words, Math.max(2 * words.length, end + sentence.size()));
+        }
+        for (String word : sentence) {
+            words[end++] = wordId(word);
+        }
+        sentenceIds[size] = sentence.getId();
+        initialLengths[size] = sentence.getInitiallength();
+        offsets[++size] = end;
+    }
+
+    /**
+     * @return ID of the word, a new ID for a word not in the vocabulary
+     */
+    private int wordId(String word) {
+        Integer id = wordIds.get(word);
+        if (id != null) {
+            return id;
+        }
+        if (vocabularySize == vocabulary.length) {
+            vocabulary = Arrays.copyOf(vocabulary, Math.max(16, 2 * vocabularySize));
+        }
+        vocabulary[vocabularySize] = word;
+        wordIds.put(word, vocabularySize);
+        return vocabularySize++;
+    }
+
+    /**
+     * Shrinks all arrays to the sentences and words added so far
+     */
+    public void trimToSize() {
+        vocabulary = Arrays.copyOf(vocabulary, vocabularySize);
+        words = Arrays.copyOf(words, offsets[size]);
+        offsets = Arrays.copyOf(offsets, size + 1);
+        sentenceIds = Arrays.copyOf(sentenceIds, size);
+        initialLengths = Arrays.copyOf(initialLengths, size);
+    }
+
+    /**
+     * @return Number of sentences
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of the sentence
+     * @return Sentence ID of the sentence
+     */
+    public int getId(int index) {
+        return sentenceIds[index];
+    }
+
+    /**
+     * @param index Index of the sentence
+     * @return Initial length of the sentence
+     */
+    public int getInitiallength(int index) {
+        return initialLengths[index];
+    }
+
+    /**
+     * @param index Index of the sentence
+     * @return Number of words of the sentence
+     */
+    public int length(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * @param index Index of the sentence
+     * @param position Position of the word in the sentence
+     * @return Word ID of the word, see {@link #getWord(int)}
+     */
+    public int getWordId(int index, int position) {
+        return words[offsets[index] + position];
+    }
+
+    /**
+     * @return Number of distinct words
+     */
+    public int vocabularySize() {
+        return vocabularySize;
+    }
+
+    /**
+     * @param wordId Word ID between 0 and {@link #vocabularySize()}
+     * @return The word
+     */
+    public String getWord(int wordId) {
+        return vocabulary[wordId];
+    }
+
+    /**
+     * @param index Index of the sentence
+     * @return Read-only view of the words of the sentence
+     */
+    public List<String> get(int index) {
+        return new WordView(offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * @param index Index of the sentence
+     * @return New Sentence with the ID, initial length and words of the sentence
+     */
+    public Sentence getSentence(int index) {
+        return new Sentence(sentenceIds[index], initialLengths[index], get(index));
+    }
+
+    /**
+     * @return New SentenceList with all sentences, see {@link #getSentence(int)}
+     */
+    public SentenceList toSentenceList() {
+        SentenceList sentenceList = new SentenceList(size);
+        for (int i = 0; i < size; i++) {
+            sentenceList.add(getSentence(i));
+        }
+        return sentenceList;
+    }
+
+    /**
+     * Words of one sentence, backed by the word IDs
+     */
+    private class WordView extends AbstractList<String> implements RandomAccess {
+
+        private final int from;
+
+        private final int to;
+
+        WordView(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(int position) {
+            if (position < 0 || position >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + (to - from));
+            }
+            return vocabulary[words[from + position]];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
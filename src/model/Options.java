@@ -36,6 +36,21 @@ public class Options {
      */
     private boolean editUmlauts;
 
+    /**
+     * Whether sentences are split by regular expressions instead of the {@link model.SentenceTokenizer}
+     */
+    private boolean regexTokenizer = false;
+
+    /**
+     * Number of threads splitting the sentences while they are read, 0 uses all available processors
+     */
+    private int preprocessingParallelism = 1;
+
+    /**
+     * Number of batches of sentences read ahead of the preprocessing
+     */
+    private int preprocessingQueueDepth = 16;
+
     /**
      * Whether ingnoreCases should be applied or not
      */
@@ -61,6 +76,16 @@ public class Options {
      */
     private final boolean updateWordCounts;
 
+    /**
+     * Whether {@link computations.WordCounter} counts the words while the sentences are streamed from the database
+     */
+    private final boolean streamWordCounts;
+
+    /**
+     * Number of threads used by {@link computations.WordCounter}, 0 uses all available processors
+     */
+    private int wordCountParallelism = 1;
+
     /**
      * Whether {@link similarity.SimilarityMatrix} should be recalculated
      */
@@ -76,6 +101,116 @@ public class Options {
      */
     private int minimumMatchlength = 0;
 
+    /**
+     * Whether {@link similarity.SimilarityMatrix} generates candidate pairs by an {@link similarity.InvertedIndex}
+     */
+    private boolean indexMode = false;
+
+    /**
+     * Whether {@link similarity.SimilarityMatrix} uses a {@link similarity.PrefixFilterJoin}
+     */
+    private boolean joinMode = false;
+
+    /**
+     * Whether {@link similarity.SimilarityMatrix} scores only the candidates of a {@link similarity.MinHashLsh}
+     */
+    private boolean lshMode = false;
+
+    /**
+     * Whether {@link similarity.SimilarityMatrix} uses a {@link similarity.LengthWindowBlocking}
+     */
+    private boolean windowMode = false;
+
+    /**
+     * Number of bands of the {@link similarity.MinHashLsh}
+     */
+    private int similarityLshBands = 20;
+
+    /**
+     * Number of rows per band of the {@link similarity.MinHashLsh}
+     */
+    private int similarityLshRows = 5;
+
+    /**
+     * Number of sentences used to measure the recall of the {@link similarity.MinHashLsh}, 0 skips the measurement
+     */
+    private int similarityLshRecallSample = 1000;
+
+    /**
+     * Whether {@link similarity.SimilarityMatrix} compares only one sentence of every group of identical sentences
+     */
+    private boolean similarityDedup = false;
+
+    /**
+     * Number of sampled pairs of the estimate of {@link similarity.SimilarityMatrix}, 0 calculates all similarities
+     */
+    private int similarityEstimateSample = 0;
+
+    /**
+     * Number of data points of the estimated similarity distribution
+     */
+    private int similarityEstimateGranularity = 10;
+
+    /**
+     * Number of threads used by {@link similarity.SimilarityMatrix}, 0 uses all available processors
+     */
+    private int similarityParallelism = 1;
+
+    /**
+     * How {@link similarity.SimilarityMatrix} compares two sentences: ids, strings, bitset or earlyexit
+     */
+    private String similarityKernel = "ids";
+
+    /**
+     * Similarity measure of {@link similarity.SimilarityMatrix}: weighted, jaccard, overlap or cosine
+     */
+    private String similarityMeasure = "weighted";
+
+    /**
+     * Where {@link similarity.SimilarityMatrix} passes its entries to: memory, jdbc or file
+     */
+    private String similaritySink = "memory";
+
+    /**
+     * Maximum number of rows per batch in table sentence_similarity
+     */
+    private int similarityBatchSize = 10000;
+
+    /**
+     * Spill file for the similarity sink "file"
+     */
+    private String similaritySpillFile = "similarities.bin";
+
+    /**
+     * Number of most similar sentences kept per sentence, 0 keeps all similarities above the threshold
+     */
+    private int similarityTopK = 0;
+
+    /**
+     * Whether only similarities of new sentences should be calculated
+     */
+    private boolean incrementalSimilarities = false;
+
+    /**
+     * Checkpoint file of the similarity calculation, empty if no checkpoints should be written
+     */
+    private String similarityCheckpointFile = "";
+
+    /**
+     * Seconds between two checkpoints
+     */
+    private int similarityCheckpointInterval = 600;
+
+    /**
+     * Number of worker processes, which share the similarity calculation
+     */
+    private int similarityShards = 1;
+
+    /**
+     * Shard calculated by this worker process, -1 for the coordinator or a single process
+     */
+    private int similarityShard = -1;
+
     /**
      * @param properties Properties Object with initial values
      * @throws Exception Thrown, if values are not correct
@@ -83,6 +218,16 @@ public class Options {
     public Options(Properties properties) throws Exception {
 
         this.updateWordCounts = Boolean.parseBoolean(properties.getProperty("updateWordCounts"));
+        this.streamWordCounts = Boolean.parseBoolean(properties.getProperty("streamWordCounts", "false"));
+
+        try {
+            this.wordCountParallelism = Integer.parseInt(properties.getProperty("wordCountParallelism", "1"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"wordCountParallelism\"");
+        }
+        if (this.wordCountParallelism < 0) {
+            throw new Exception("Invalid value for option \"wordCountParallelism\"");
+        }
 
         String tmp = properties.getProperty("filter");
         if (tmp.equals("ignoreCases")) {
@@ -100,6 +245,33 @@ public class Options {
 
         this.editUmlauts = Boolean.parseBoolean(properties.getProperty("editUmlauts"));
 
+        tmp = properties.getProperty("tokenizer", "scan");
+        if (tmp.equals("scan")) {
+            this.regexTokenizer = false;
+        } else if (tmp.equals("regex")) {
+            this.regexTokenizer = true;
+        } else {
+            throw new Exception("Invalid value for option \"tokenizer\"");
+        }
+
+        try {
+            this.preprocessingParallelism = Integer.parseInt(properties.getProperty("preprocessingParallelism", "1"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"preprocessingParallelism\"");
+        }
+        if (this.preprocessingParallelism < 0) {
+            throw new Exception("Invalid value for option \"preprocessingParallelism\"");
+        }
+
+        try {
+            this.preprocessingQueueDepth = Integer.parseInt(properties.getProperty("preprocessingQueueDepth", "16"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"preprocessingQueueDepth\"");
+        }
+        if (this.preprocessingQueueDepth < 1) {
+            throw new Exception("Invalid value for option \"preprocessingQueueDepth\"");
+        }
+
         tmp = properties.getProperty("reduceMethod");
         if (tmp.equals("percent")) {
             this.percent = true;
@@ -140,6 +312,169 @@ public class Options {
         catch(NumberFormatException e) {
             throw new Exception("Invalid value for option \"similarityThreshold\"");
         }
+
+        tmp = properties.getProperty("similarityMode", "bruteforce");
+        if (tmp.equals("bruteforce")) {
+            this.indexMode = false;
+        } else if (tmp.equals("index")) {
+            this.indexMode = true;
+        } else if (tmp.equals("join")) {
+            this.joinMode = true;
+        } else if (tmp.equals("lsh")) {
+            this.lshMode = true;
+        } else if (tmp.equals("window")) {
+            this.windowMode = true;
+        } else {
+            throw new Exception("Invalid value for option \"similarityMode\"");
+        }
+
+        try {
+            this.similarityLshBands = Integer.parseInt(properties.getProperty("similarityLshBands", "20"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityLshBands\"");
+        }
+        if (this.similarityLshBands < 1) {
+            throw new Exception("Invalid value for option \"similarityLshBands\"");
+        }
+
+        try {
+            this.similarityLshRows = Integer.parseInt(properties.getProperty("similarityLshRows", "5"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityLshRows\"");
+        }
+        if (this.similarityLshRows < 1) {
+            throw new Exception("Invalid value for option \"similarityLshRows\"");
+        }
+
+        try {
+            this.similarityLshRecallSample = Integer.parseInt(properties.getProperty("similarityLshRecallSample", "1000"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityLshRecallSample\"");
+        }
+        if (this.similarityLshRecallSample < 0) {
+            throw new Exception("Invalid value for option \"similarityLshRecallSample\"");
+        }
+
+        this.similarityDedup = Boolean.parseBoolean(properties.getProperty("similarityDedup", "false"));
+
+        try {
+            this.similarityEstimateSample = Integer.parseInt(properties.getProperty("similarityEstimateSample", "0"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityEstimateSample\"");
+        }
+        if (this.similarityEstimateSample < 0) {
+            throw new Exception("Invalid value for option \"similarityEstimateSample\"");
+        }
+
+        try {
+            this.similarityEstimateGranularity = Integer.parseInt(properties.getProperty("similarityEstimateGranularity", "10"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityEstimateGranularity\"");
+        }
+        if (this.similarityEstimateGranularity < 1) {
+            throw new Exception("Invalid value for option \"similarityEstimateGranularity\"");
+        }
+
+        try {
+            this.similarityParallelism = Integer.parseInt(properties.getProperty("similarityParallelism", "1"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityParallelism\"");
+        }
+        if (this.similarityParallelism < 0) {
+            throw new Exception("Invalid value for option \"similarityParallelism\"");
+        }
+
+        tmp = properties.getProperty("similarityKernel", "ids");
+        if (tmp.equals("ids") || tmp.equals("strings") || tmp.equals("bitset") || tmp.equals("earlyexit")) {
+            this.similarityKernel = tmp;
+        } else {
+            throw new Exception("Invalid value for option \"similarityKernel\"");
+        }
+
+        tmp = properties.getProperty("similarityMeasure", "weighted");
+        if (tmp.equals("weighted") || tmp.equals("jaccard") || tmp.equals("overlap") || tmp.equals("cosine")) {
+            this.similarityMeasure = tmp;
+        } else {
+            throw new Exception("Invalid value for option \"similarityMeasure\"");
+        }
+        // the string kernel is the reference of the weighted measure only
+        if (!this.similarityMeasure.equals("weighted") && this.similarityKernel.equals("strings")) {
+            throw new Exception("Invalid value for option \"similarityMeasure\"");
+        }
+
+        tmp = properties.getProperty("similaritySink", "memory");
+        if (tmp.equals("memory") || tmp.equals("jdbc") || tmp.equals("file")) {
+            this.similaritySink = tmp;
+        } else {
+            throw new Exception("Invalid value for option \"similaritySink\"");
+        }
+
+        try {
+            this.similarityBatchSize = Integer.parseInt(properties.getProperty("similarityBatchSize", "10000"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityBatchSize\"");
+        }
+        if (this.similarityBatchSize < 1) {
+            throw new Exception("Invalid value for option \"similarityBatchSize\"");
+        }
+
+        this.similaritySpillFile = properties.getProperty("similaritySpillFile", "similarities.bin");
+
+        try {
+            this.similarityTopK = Integer.parseInt(properties.getProperty("similarityTopK", "0"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityTopK\"");
+        }
+        if (this.similarityTopK < 0) {
+            throw new Exception("Invalid value for option \"similarityTopK\"");
+        }
+
+        this.incrementalSimilarities = Boolean.parseBoolean(properties.getProperty("incrementalSimilarities", "false"));
+
+        this.similarityCheckpointFile = properties.getProperty("similarityCheckpointFile", "").trim();
+        if (!this.similarityCheckpointFile.isEmpty() && this.similaritySink.equals("memory")) {
+            throw new Exception("Option \"similarityCheckpointFile\" needs similaritySink jdbc or file");
+        }
+
+        try {
+            this.similarityCheckpointInterval = Integer.parseInt(properties.getProperty("similarityCheckpointInterval", "600"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityCheckpointInterval\"");
+        }
+        if (this.similarityCheckpointInterval < 0) {
+            throw new Exception("Invalid value for option \"similarityCheckpointInterval\"");
+        }
+
+        try {
+            this.similarityShards = Integer.parseInt(properties.getProperty("similarityShards", "1"));
+            this.similarityShard = Integer.parseInt(properties.getProperty("similarityShard", "-1"));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for option \"similarityShards\"");
+        }
+        if (this.similarityShards < 1) {
+            throw new Exception("Invalid value for option \"similarityShards\"");
+        }
+        if (this.similarityShard < -1 || this.similarityShard >= this.similarityShards) {
+            throw new Exception("Invalid value for option \"similarityShard\"");
+        }
+        // the workers compute their rows in parallel, a join by the index, and would ignore these options
+        if (this.similarityShards > 1 && (this.similarityTopK > 0 || this.incrementalSimilarities || this.similarityDedup
+                || this.windowMode || this.lshMode)) {
+            throw new Exception("Option \"similarityShards\" can not be combined with similarityTopK, incrementalSimilarities,"
+                    + " similarityDedup or similarityMode window and lsh");
+        }
+        // the incremental mode compares the new sentences sequentially by the index and ignores these options
+        if (this.incrementalSimilarities && (this.similarityTopK > 0 || this.similarityDedup || this.joinMode
+                || this.windowMode || this.lshMode || this.similarityParallelism != 1)) {
+            throw new Exception("Option \"incrementalSimilarities\" can not be combined with similarityTopK, similarityDedup,"
+                    + " similarityMode join, window and lsh or a similarityParallelism other than 1");
+        }
+        // these modes collect all entries before passing them on, the workers of a sharded join compute indexed instead
+        if (!this.similaritySink.equals("memory") && this.similarityShards == 1 && (this.similarityTopK > 0
+                || this.incrementalSimilarities || this.similarityDedup || this.joinMode || this.windowMode || this.lshMode)) {
+            throw new Exception("Option \"similaritySink\" jdbc or file can not be combined with similarityTopK, incrementalSimilarities,"
+                    + " similarityDedup or similarityMode join, window and lsh");
+        }
     }
 
     /**
@@ -149,6 +484,27 @@ public class Options {
         return editUmlauts;
     }
 
+    /**
+     * @return Returns true if sentences should be split by regular expressions instead of the {@link model.SentenceTokenizer}
+     */
+    public boolean isRegexTokenizer() {
+        return regexTokenizer;
+    }
+
+    /**
+     * @return Returns the number of threads splitting the sentences, 0 means all available processors
+     */
+    public int getPreprocessingParallelism() {
+        return preprocessingParallelism;
+    }
+
+    /**
+     * @return Returns the number of batches of sentences read ahead of the preprocessing
+     */
+    public int getPreprocessingQueueDepth() {
+        return preprocessingQueueDepth;
+    }
+
     /**
      * @return Returns true if all sentences should be in lowercase
      */
@@ -170,6 +526,20 @@ public class Options {
         return updateWordCounts;
     }
 
+    /**
+     * @return Returns true if the words should be counted while the sentences are streamed from the database
+     */
+    public boolean isStreamWordCounts() {
+        return streamWordCounts;
+    }
+
+    /**
+     * @return Returns the number of threads for {@link computations.WordCounter}, 0 means all available processors
+     */
+    public int getWordCountParallelism() {
+        return wordCountParallelism;
+    }
+
     /**
      * @return Returns true if the sentence_similarity table should be recalculated
      */
@@ -232,4 +602,179 @@ public class Options {
     public int getMinimumMatchLength() {
         return minimumMatchlength;
     }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should only score pairs with a common word
+     */
+    public boolean isIndexMode() {
+        return indexMode;
+    }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should prune pairs by the threshold before scoring them
+     */
+    public boolean isJoinMode() {
+        return joinMode;
+    }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should compare only sentences of similar word count
+     */
+    public boolean isWindowMode() {
+        return windowMode;
+    }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should score only pairs colliding in a MinHash LSH
+     */
+    public boolean isLshMode() {
+        return lshMode;
+    }
+
+    /**
+     * @return Returns true if identical reduced sentences should be compared only once
+     */
+    public boolean isSimilarityDedup() {
+        return similarityDedup;
+    }
+
+    /**
+     * @return Returns the number of bands of the MinHash LSH
+     */
+    public int getSimilarityLshBands() {
+        return similarityLshBands;
+    }
+
+    /**
+     * @return Returns the number of rows per band of the MinHash LSH
+     */
+    public int getSimilarityLshRows() {
+        return similarityLshRows;
+    }
+
+    /**
+     * @return Returns the number of sentences used to measure the recall of the MinHash LSH, 0 skips it
+     */
+    public int getSimilarityLshRecallSample() {
+        return similarityLshRecallSample;
+    }
+
+    /**
+     * @return Returns the number of sampled pairs of the similarity estimate, 0 calculates all similarities
+     */
+    public int getSimilarityEstimateSample() {
+        return similarityEstimateSample;
+    }
+
+    /**
+     * @return Returns the number of data points of the estimated similarity distribution
+     */
+    public int getSimilarityEstimateGranularity() {
+        return similarityEstimateGranularity;
+    }
+
+    /**
+     * @return Returns the number of threads for {@link similarity.SimilarityMatrix}, 0 means all available processors
+     */
+    public int getSimilarityParallelism() {
+        return similarityParallelism;
+    }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should compare words as strings
+     */
+    public boolean isStringKernel() {
+        return similarityKernel.equals("strings");
+    }
+
+    /**
+     * @return Returns the name of the similarity measure
+     */
+    public String getSimilarityMeasure() {
+        return similarityMeasure;
+    }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should compare sentences as bitsets
+     */
+    public boolean isBitsetKernel() {
+        return similarityKernel.equals("bitset");
+    }
+
+    /**
+     * @return Returns true if {@link similarity.SimilarityMatrix} should abandon pairs, which can not reach the threshold
+     */
+    public boolean isEarlyExitKernel() {
+        return similarityKernel.equals("earlyexit");
+    }
+
+    /**
+     * @return Returns true if similarities should be written to table sentence_similarity while they are calculated
+     */
+    public boolean isJdbcSink() {
+        return similaritySink.equals("jdbc");
+    }
+
+    /**
+     * @return Returns true if similarities should be spilled to {@link #getSimilaritySpillFile()} while they are calculated
+     */
+    public boolean isFileSink() {
+        return similaritySink.equals("file");
+    }
+
+    /**
+     * @return Returns the maximum number of rows per batch in table sentence_similarity
+     */
+    public int getSimilarityBatchSize() {
+        return similarityBatchSize;
+    }
+
+    /**
+     * @return Returns the spill file for similarities
+     */
+    public String getSimilaritySpillFile() {
+        return similaritySpillFile;
+    }
+
+    /**
+     * @return Returns the number of most similar sentences kept per sentence, 0 keeps all
+     */
+    public int getSimilarityTopK() {
+        return similarityTopK;
+    }
+
+    /**
+     * @return Returns true if only sentences added since the last run should be compared
+     */
+    public boolean isIncrementalSimilarities() {
+        return incrementalSimilarities;
+    }
+
+    /**
+     * @return Returns the checkpoint file of the similarity calculation, empty if disabled
+     */
+    public String getSimilarityCheckpointFile() {
+        return similarityCheckpointFile;
+    }
+
+    /**
+     * @return Returns the seconds between two checkpoints
+     */
+    public int getSimilarityCheckpointInterval() {
+        return similarityCheckpointInterval;
+    }
+
+    /**
+     * @return Returns the number of worker processes sharing the similarity calculation
+     */
+    public int getSimilarityShards() {
+        return similarityShards;
+    }
+
+    /**
+     * @return Returns the shard calculated by this worker process, -1 for the coordinator or a single process
+     */
+    public int getSimilarityShard() {
+        return similarityShard;
+    }
 }
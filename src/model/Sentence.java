@@ -69,10 +69,25 @@ public class Sentence extends ArrayList<String> {
      * Applies all possible options, like toLowerCase and editUmlauts to the sentence.
      * Afterwards the sentence will be spliced into words.
      * All words will be added to a global HashMap with its amount of occurrence
+     * <p>
+     * The words are split by the {@link model.SentenceTokenizer}, unless the tokenizer regex is selected
+     * or the sentence needs locale dependent lowercasing.
      *
      * @param sentence A whole sentence from a ResultSet
      */
     private void calculateWords(String sentence) {
+        if (opt.isRegexTokenizer() || !SentenceTokenizer.tokenize(sentence, opt.isIgnoreCases(), opt.isEditUmlauts(), this)) {
+            calculateWordsByRegex(sentence);
+        }
+    }
+
+    /**
+     * Splits the sentence by string replacements and regular expressions.
+     * Kept as reference for the {@link model.SentenceTokenizer}.
+     *
+     * @param sentence A whole sentence from a ResultSet
+     */
+    private void calculateWordsByRegex(String sentence) {
         //remove punctuation mark and other character
 
         for (String replacement: punctuation_marks) {
@@ -0,0 +1,184 @@
+package model;
+
+import metrics.Metrics;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the rows s_id and sentence of a ResultSet in batches and preprocesses them into {@link model.Sentence}s.
+ * <p>
+ * With a preprocessingParallelism of 1 every batch is split on the reading thread. Otherwise the reading thread
+ * only reads the rows, up to preprocessingQueueDepth batches are split by a pool of workers meanwhile.
+ * The batches are returned in the order of the rows either way, no more than the batches read ahead are held.
+ * <p>
+ * The time the reading thread spends splitting or waiting for the workers is added to the stage preprocessing of the
+ * {@link metrics.Metrics}, the rows and characters to the running stage.
+ *
+ * @author Martin Stoffers
+ */
+public final class SentenceImporter {
+
+    /**
+     * Number of rows of a batch
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    private final ResultSet set;
+
+    private final Options opt;
+
+    /**
+     * Workers, null if the batches are split on the reading thread
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Batches read and handed to the workers in the order of the rows
+     */
+    private final ArrayDeque<Future<Sentence[]>> pending = new ArrayDeque<Future<Sentence[]>>();
+
+    private final int queueDepth;
+
+    private boolean exhausted = false;
+
+    private long rows = 0;
+
+    private long bytes = 0;
+
+    /**
+     * Nanoseconds the reading thread spent in the preprocessing
+     */
+    private long preprocessing = 0;
+
+    /**
+     * @param set Contains the result with all sentences from database
+     * @param opt properties object
+     */
+    public SentenceImporter(ResultSet set, Options opt) {
+        this.set = set;
+        this.opt = opt;
+        int parallelism = opt.getPreprocessingParallelism();
+        if (parallelism == 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        this.pool = (parallelism > 1) ? Executors.newFixedThreadPool(parallelism) : null;
+        this.queueDepth = opt.getPreprocessingQueueDepth();
+    }
+
+    /**
+     * @return The sentences of the next batch in the order of the rows, null after the last row
+     * @throws SQLException Thrown, if ResultSet has an error or the preprocessing was interrupted
+     */
+    public Sentence[] nextBatch() throws SQLException {
+        if (pool == null) {
+            Batch batch = read();
+            if (batch == null) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Sentence[] sentences = batch.call();
+            preprocessing += System.nanoTime() - start;
+            return sentences;
+        }
+
+        while (!exhausted && pending.size() < queueDepth) {
+            Batch batch = read();
+            if (batch == null) {
+                break;
+            }
+            pending.add(pool.submit(batch));
+        }
+        Future<Sentence[]> next = pending.poll();
+        if (next == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Preprocessing of sentences interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SQLException("Preprocessing of sentences failed", e.getCause());
+        } finally {
+            preprocessing += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return The next rows, null after the last row
+     * @throws SQLException Thrown, if ResultSet has an error
+     */
+    private Batch read() throws SQLException {
+        int[] ids = new int[BATCH_SIZE];
+        String[] sentences = new String[BATCH_SIZE];
+        int count = 0;
+        while (count < BATCH_SIZE && !exhausted) {
+            if (!set.next()) {
+                exhausted = true;
+                break;
+            }
+            ids[count] = set.getInt("s_id");
+            sentences[count] = set.getString("sentence");
+            bytes += 4 + sentences[count].length();
+            count++;
+        }
+        rows += count;
+        return (count > 0) ? new Batch(ids, sentences, count, opt) : null;
+    }
+
+    /**
+     * Stops the workers and adds the preprocessing time, rows and characters to the {@link metrics.Metrics}
+     */
+    public void close() {
+        if (pool != null) {
+            for (Future<Sentence[]> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            pool.shutdownNow();
+        }
+        Metrics.getInstance().addStageTime(Metrics.PREPROCESSING, preprocessing);
+        Metrics.getInstance().addStageRows(rows, bytes);
+    }
+
+    /**
+     * Rows of a batch to be split into Sentences
+     */
+    private static final class Batch implements Callable<Sentence[]> {
+
+        private final int[] ids;
+
+        private final String[] sentences;
+
+        private final int count;
+
+        private final Options opt;
+
+        Batch(int[] ids, String[] sentences, int count, Options opt) {
+            this.ids = ids;
+            this.sentences = sentences;
+            this.count = count;
+            this.opt = opt;
+        }
+
+        @Override
+        public Sentence[] call() {
+            Sentence[] split = new Sentence[count];
+            for (int i = 0; i < count; i++) {
+                split[i] = new Sentence(ids[i], sentences[i], opt);
+            }
+            return split;
+        }
+    }
+}
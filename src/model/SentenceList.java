@@ -34,16 +34,24 @@ public class SentenceList extends ArrayList<Sentence> {
     }
 
     /**
+     * Reads and preprocesses the sentences in batches by a {@link model.SentenceImporter},
+     * in parallel with a preprocessingParallelism other than 1.
+     *
      * @param set Contains the result with all sentences from database
      * @param opt properties object
-     * @throws SQLException Thrown, if ResultSet has an error
+     * @throws SQLException Thrown, if ResultSet has an error or the preprocessing was interrupted
      */
     private void importResultSet(ResultSet set, Options opt) throws SQLException {
-        while (set.next()) {
-            int sid = set.getInt("s_id");
-            String sentence = set.getString("sentence");
-            Sentence s = new Sentence(sid, sentence, opt);
-            this.add(s);
+        SentenceImporter importer = new SentenceImporter(set, opt);
+        try {
+            Sentence[] batch;
+            while ((batch = importer.nextBatch()) != null) {
+                for (Sentence sentence : batch) {
+                    add(sentence);
+                }
+            }
+        } finally {
+            importer.close();
         }
     }
 }
@@ -0,0 +1,205 @@
+package model;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits a sentence into words in one scan of its characters, without regular expressions.
+ * <p>
+ * The words are exactly the same as those of the regex tokenizer of {@link model.Sentence}, which is kept as reference:
+ * <ul>
+ *     <li>The punctuation marks are removed in the order of the string replacements, "-&gt;" only after the brackets and
+ *     before "%", "&amp;" and "+"</li>
+ *     <li>Runs of spaces are halved like by replacing every double space once, the split keeps empty words
+ *     except at the end</li>
+ *     <li>The cleanup rules are tested on the word before the cleanup and a later rule overwrites an earlier one</li>
+ *     <li>The word behind a removed word is kept without cleanup</li>
+ * </ul>
+ * Lowercasing is only done for Latin-1 characters, where it does not depend on the locale or the neighbouring
+ * characters. Other sentences are left to the regex tokenizer.
+ *
+ * @author Martin Stoffers
+ */
+final class SentenceTokenizer {
+
+    private SentenceTokenizer() {
+    }
+
+    /**
+     * Adds the words of a sentence to the given list
+     *
+     * @param sentence A whole sentence
+     * @param ignoreCases Whether the sentence should be in lowercase
+     * @param editUmlauts Whether umlauts should be replaced by their ascii representation
+     * @param words Receives the words
+     * @return False, if the sentence must be split by the regex tokenizer. Nothing is added in this case.
+     */
+    static boolean tokenize(String sentence, boolean ignoreCases, boolean editUmlauts, List<String> words) {
+        if (ignoreCases && localeDependent()) {
+            return false;
+        }
+        int length = sentence.length();
+        char[] text = new char[editUmlauts ? 2 * length : length];
+        int n = 0;
+        // last character not removed by the first punctuation marks, the one before "->" is replaced
+        char last = 0;
+        for (int i = 0; i < length; i++) {
+            char c = sentence.charAt(i);
+            switch (c) {
+                case '"': case '?': case '!': case ',': case ';':
+                case '(': case ')': case '[': case ']': case '{': case '}':
+                    continue;
+                case '>':
+                    if (last == '-') {
+                        n--;
+                        last = 0;
+                        continue;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            last = c;
+            if (c == '%' || c == '&' || c == '+') {
+                continue;
+            }
+            if (ignoreCases && c >= 'A') {
+                if (c > 0xFF) {
+                    return false;
+                }
+                c = Character.toLowerCase(c);
+            }
+            if (editUmlauts && c >= 0xC4) {
+                switch (c) {
+                    case 'Ä': text[n++] = 'A'; text[n++] = 'e'; continue;
+                    case 'Ö': text[n++] = 'O'; text[n++] = 'e'; continue;
+                    case 'Ü': text[n++] = 'U'; text[n++] = 'e'; continue;
+                    case 'ä': text[n++] = 'a'; text[n++] = 'e'; continue;
+                    case 'ö': text[n++] = 'o'; text[n++] = 'e'; continue;
+                    case 'ü': text[n++] = 'u'; text[n++] = 'e'; continue;
+                    case 'ß': text[n++] = 's'; text[n++] = 's'; continue;
+                    default: break;
+                }
+            }
+            text[n++] = c;
+        }
+
+        // word borders like split(" ") of the text with halved runs of spaces
+        int[] starts = new int[n + 1];
+        int[] ends = new int[n + 1];
+        int count = 0;
+        int start = 0;
+        int k = 0;
+        while (k < n) {
+            if (text[k] != ' ') {
+                k++;
+                continue;
+            }
+            int run = k;
+            while (k < n && text[k] == ' ') {
+                k++;
+            }
+            starts[count] = start;
+            ends[count++] = run;
+            // every further space of the halved run separates an empty word
+            for (int empty = 1; empty < ((k - run) + 1) / 2; empty++) {
+                starts[count] = run;
+                ends[count++] = run;
+            }
+            start = k;
+        }
+        starts[count] = start;
+        ends[count++] = n;
+        boolean split = count > 1;
+        while (split && count > 0 && starts[count - 1] == ends[count - 1]) {
+            count--;
+        }
+
+        // cleanup rules
+        for (int w = 0; w < count; w++) {
+            int from = starts[w];
+            int to = ends[w];
+            int size = to - from;
+            if (size < 2 || isTime(text, from, size)) {
+                // removed, the next word is kept unchanged
+                if (w + 1 < count) {
+                    w++;
+                    words.add(new String(text, starts[w], ends[w] - starts[w]));
+                }
+                continue;
+            }
+            char first = text[from];
+            char end = text[to - 1];
+            if ((first == '-' || first == ':') && isWord(text, from + 1, to)) {
+                from++;
+            } else if (end == ':' && isWord(text, from, to - 1)) {
+                to--;
+            } else if (end == '.' && (isLetters(text, from, to - 1) || isNumber(text, from, to - 1))) {
+                to--;
+            }
+            words.add(new String(text, from, to - from));
+        }
+        return true;
+    }
+
+    /**
+     * @return True, if String.toLowerCase() has special rules for Latin-1 characters in the default locale
+     */
+    private static boolean localeDependent() {
+        String language = Locale.getDefault().getLanguage();
+        return language.equals("tr") || language.equals("az") || language.equals("lt");
+    }
+
+    /**
+     * @return True, if all characters match \w
+     */
+    private static boolean isWord(char[] text, int from, int to) {
+        for (int k = from; k < to; k++) {
+            char c = text[k];
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True, if there is at least one character and all characters match [A-Za-z-]
+     */
+    private static boolean isLetters(char[] text, int from, int to) {
+        for (int k = from; k < to; k++) {
+            char c = text[k];
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-')) {
+                return false;
+            }
+        }
+        return to > from;
+    }
+
+    /**
+     * @return True, if there are 3 to 10 characters matching \d
+     */
+    private static boolean isNumber(char[] text, int from, int to) {
+        if (to - from < 3 || to - from > 10) {
+            return false;
+        }
+        for (int k = from; k < to; k++) {
+            if (text[k] < '0' || text[k] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True, if the word matches \d\d:\d\d
+     */
+    private static boolean isTime(char[] text, int from, int size) {
+        return size == 5 && text[from + 2] == ':'
+                && digit(text[from]) && digit(text[from + 1]) && digit(text[from + 3]) && digit(text[from + 4]);
+    }
+
+    private static boolean digit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
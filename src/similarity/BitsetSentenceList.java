@@ -0,0 +1,163 @@
+package similarity;
+
+import java.util.Arrays;
+
+/**
+ * An {@link similarity.EncodedSentenceList} stored as blocked sparse bitsets.
+ * The words are renumbered by descending document frequency, so the frequent rare words share the first blocks.
+ * Every sentence keeps only its non empty blocks of 64 words as pair of block number and bit mask.
+ * Two sentences are compared by merging their block numbers, the matched words of a block are counted
+ * by AND and popcount and their lengths are summed up over the set bits of the AND.
+ * <p>
+ * The result of {@link #similarity(int, int)} is the same as {@link similarity.EncodedSentenceList#similarity(int, int)}.
+ *
+ * @author Martin Stoffers
+ */
+public class BitsetSentenceList {
+
+    /**
+     * Encoded sentences with word counts and initial lengths
+     */
+    private final EncodedSentenceList sentences;
+
+    /**
+     * First block of every sentence in {@link #blocks} and {@link #bits}, the last value is the number of all blocks
+     */
+    private final int[] offsets;
+
+    /**
+     * Ascending block numbers of every sentence
+     */
+    private final int[] blocks;
+
+    /**
+     * Bit mask of the words of every block
+     */
+    private final long[] bits;
+
+    /**
+     * Length of every word by its renumbered ID
+     */
+    private final int[] lengths;
+
+    /**
+     * Builds the bitsets of the given sentences
+     *
+     * @param sentences Sentences which should be stored as bitsets
+     */
+    public BitsetSentenceList(EncodedSentenceList sentences) {
+        this.sentences = sentences;
+        int size = sentences.size();
+        int words = sentences.dictionary().size();
+        int[] wordLengths = sentences.dictionary().lengths();
+
+        // renumber by descending document frequency
+        int[] frequency = new int[words];
+        for (int i = 0; i < size; i++) {
+            for (int id : sentences.words(i)) {
+                frequency[id]++;
+            }
+        }
+        long[] order = new long[words];
+        for (int id = 0; id < words; id++) {
+            order[id] = ((long) (size - frequency[id]) << 32) | id;
+        }
+        Arrays.sort(order);
+        int[] renumbered = new int[words];
+        lengths = new int[words];
+        for (int r = 0; r < words; r++) {
+            int id = (int) order[r];
+            renumbered[id] = r;
+            lengths[r] = wordLengths[id];
+        }
+
+        // first pass: number of blocks of every sentence
+        int[][] ids = new int[size][];
+        offsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            int[] w = sentences.words(i);
+            int[] r = new int[w.length];
+            for (int k = 0; k < w.length; k++) {
+                r[k] = renumbered[w[k]];
+            }
+            Arrays.sort(r);
+            ids[i] = r;
+            int count = 0;
+            for (int k = 0; k < r.length; k++) {
+                if (k == 0 || (r[k] >>> 6) != (r[k - 1] >>> 6)) {
+                    count++;
+                }
+            }
+            offsets[i + 1] = offsets[i] + count;
+        }
+
+        // second pass: fill the blocks
+        blocks = new int[offsets[size]];
+        bits = new long[offsets[size]];
+        for (int i = 0; i < size; i++) {
+            int block = offsets[i] - 1;
+            int[] r = ids[i];
+            for (int k = 0; k < r.length; k++) {
+                if (k == 0 || (r[k] >>> 6) != (r[k - 1] >>> 6)) {
+                    block++;
+                    blocks[block] = r[k] >>> 6;
+                }
+                bits[block] |= 1L << (r[k] & 63);
+            }
+        }
+    }
+
+    /**
+     * Computes the similarity of two sentences like {@link similarity.SimilarityMatrix}. Does not allocate any memory.
+     *
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @return Similarity between the given sentences
+     */
+    public float similarity(int a, int b) {
+        int match_length = 0;
+        int matched_wordcount = 0;
+        int x = offsets[a];
+        int xEnd = offsets[a + 1];
+        int y = offsets[b];
+        int yEnd = offsets[b + 1];
+        while (x < xEnd && y < yEnd) {
+            int block1 = blocks[x];
+            int block2 = blocks[y];
+            if (block1 == block2) {
+                long matched = bits[x] & bits[y];
+                if (matched != 0) {
+                    matched_wordcount += Long.bitCount(matched);
+                    int base = block1 << 6;
+                    do {
+                        match_length += lengths[base + Long.numberOfTrailingZeros(matched)];
+                        matched &= matched - 1;
+                    } while (matched != 0);
+                }
+                x++;
+                y++;
+            } else if (block1 < block2) {
+                x++;
+            } else {
+                y++;
+            }
+        }
+
+        return sentences.measure().similarity(sentences, a, b, matched_wordcount, match_length);
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Number of non empty blocks of the sentence
+     */
+    public int blockCount(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * @return Number of sentences
+     */
+    public int size() {
+        return sentences.size();
+    }
+}
@@ -0,0 +1,57 @@
+package similarity;
+
+/**
+ * Cosine of the binary word vectors: matched / sqrt(distinct(a) * distinct(b)).
+ * <p>
+ * A pair exceeds the threshold t only if matched &gt; t * sqrt(distinct(a) * distinct(b)),
+ * so every partner has more than t^2 * distinct(a) words.
+ *
+ * @author Martin Stoffers
+ */
+public class CosineMeasure implements SimilarityMeasure {
+
+    @Override
+    public String getName() {
+        return "cosine";
+    }
+
+    @Override
+    public float similarity(EncodedSentenceList sentences, int a, int b, int matched, int matchLength) {
+        long product = (long) sentences.words(a).length * sentences.words(b).length;
+        return (product > 0) ? (float) (matched / Math.sqrt(product)) : 0.0f;
+    }
+
+    @Override
+    public double upperBound(EncodedSentenceList sentences, int a, int b) {
+        int ua = sentences.words(a).length;
+        int ub = sentences.words(b).length;
+        return (ua > 0 && ub > 0) ? Math.sqrt((double) Math.min(ua, ub) / Math.max(ua, ub)) : 0.0;
+    }
+
+    @Override
+    public int size(EncodedSentenceList sentences, int i) {
+        return sentences.words(i).length;
+    }
+
+    @Override
+    public double windowBound(EncodedSentenceList sentences, int a, int partnerSize) {
+        return (partnerSize > 0) ? Math.sqrt((double) sentences.words(a).length / partnerSize) : 0.0;
+    }
+
+    @Override
+    public int requiredOverlap(EncodedSentenceList sentences, int a, int b, double threshold) {
+        return SimilarityMeasures.requiredOverlap(threshold * Math.sqrt((double) sentences.words(a).length * sentences.words(b).length));
+    }
+
+    @Override
+    public int probePrefix(EncodedSentenceList sentences, int a, double threshold) {
+        int distinct = sentences.words(a).length;
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(threshold * threshold * distinct));
+    }
+
+    @Override
+    public int indexPrefix(EncodedSentenceList sentences, int a, double threshold) {
+        int distinct = sentences.words(a).length;
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(threshold * distinct));
+    }
+}
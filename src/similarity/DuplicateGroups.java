@@ -0,0 +1,145 @@
+package similarity;
+
+import java.util.Arrays;
+
+/**
+ * Groups sentences of an {@link similarity.EncodedSentenceList}, which are identical for the similarity formula:
+ * the same distinct word IDs, the same number of words and the same initial length.
+ * Sentences of one group have the same similarity to every other sentence, so only one representative
+ * per group needs to be compared.
+ * <p>
+ * Groups are numbered in the order of their first member, which is the representative of the group.
+ *
+ * @author Martin Stoffers
+ */
+public class DuplicateGroups {
+
+    /**
+     * Group of every sentence
+     */
+    private final int[] groups;
+
+    /**
+     * First member of every group in {@link #members}, the last value is the number of sentences
+     */
+    private final int[] memberStart;
+
+    /**
+     * Ascending positions of the members of every group
+     */
+    private final int[] members;
+
+    /**
+     * Groups the given sentences
+     *
+     * @param sentences Sentences to be grouped
+     */
+    public DuplicateGroups(EncodedSentenceList sentences) {
+        final int size = sentences.size();
+
+        // hash in the upper half, position in the lower half
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            int hash = 31 * sentences.wordCount(i) + sentences.initialLength(i);
+            for (int id : sentences.words(i)) {
+                hash = 31 * hash + id;
+            }
+            keys[i] = ((long) hash << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        // the representative of a sentence is the first equal sentence of its hash run
+        int[] representative = new int[size];
+        for (int start = 0; start < size; ) {
+            int end = start + 1;
+            while (end < size && (keys[end] >>> 32) == (keys[start] >>> 32)) {
+                end++;
+            }
+            for (int x = start; x < end; x++) {
+                int i = (int) keys[x];
+                representative[i] = i;
+                for (int y = start; y < x; y++) {
+                    int r = representative[(int) keys[y]];
+                    if (r == (int) keys[y] && equal(sentences, r, i)) {
+                        representative[i] = r;
+                        break;
+                    }
+                }
+            }
+            start = end;
+        }
+
+        // number the groups by their first member
+        groups = new int[size];
+        int[] counts = new int[size + 1];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            groups[i] = (representative[i] == i) ? count++ : groups[representative[i]];
+            counts[groups[i]]++;
+        }
+        memberStart = new int[count + 1];
+        for (int g = 0; g < count; g++) {
+            memberStart[g + 1] = memberStart[g] + counts[g];
+        }
+        members = new int[size];
+        int[] fill = Arrays.copyOf(memberStart, count);
+        for (int i = 0; i < size; i++) {
+            members[fill[groups[i]]++] = i;
+        }
+    }
+
+    /**
+     * @return True if both sentences are identical for the similarity formula
+     */
+    private static boolean equal(EncodedSentenceList sentences, int a, int b) {
+        return sentences.wordCount(a) == sentences.wordCount(b)
+                && sentences.initialLength(a) == sentences.initialLength(b)
+                && Arrays.equals(sentences.words(a), sentences.words(b));
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Group of the sentence
+     */
+    public int group(int i) {
+        return groups[i];
+    }
+
+    /**
+     * @param group Number of a group
+     * @return Position of the first member
+     */
+    public int representative(int group) {
+        return members[memberStart[group]];
+    }
+
+    /**
+     * @param group Number of a group
+     * @return Index of the first member in {@link #members()}
+     */
+    public int memberStart(int group) {
+        return memberStart[group];
+    }
+
+    /**
+     * @param group Number of a group
+     * @return Index behind the last member in {@link #members()}
+     */
+    public int memberEnd(int group) {
+        return memberStart[group + 1];
+    }
+
+    /**
+     * @return Ascending positions of the members of all groups, see {@link #memberStart(int)}
+     */
+    public int[] members() {
+        return members;
+    }
+
+    /**
+     * @return Number of groups
+     */
+    public int size() {
+        return memberStart.length - 1;
+    }
+}
@@ -0,0 +1,297 @@
+package similarity;
+
+import model.Sentence;
+import model.SentenceList;
+
+import java.util.Arrays;
+
+/**
+ * A {@link model.SentenceList} encoded by a {@link similarity.WordDictionary}.
+ * Every sentence is stored as sorted array of distinct word IDs.
+ * The number of words including duplicates and the initial length are kept for the similarity formula.
+ * The similarity is computed by a {@link similarity.SimilarityMeasure}, by default the {@link similarity.WeightedMeasure}.
+ *
+ * @author Martin Stoffers
+ */
+public class EncodedSentenceList {
+
+    /**
+     * Safety margin for the early exit, so no pair above the threshold is lost by rounding
+     */
+    private static final double EPS = 1e-6;
+
+    /**
+     * Dictionary used for the encoding
+     */
+    private final WordDictionary dictionary;
+
+    /**
+     * Sorted and distinct word IDs of every sentence
+     */
+    private final int[][] words;
+
+    /**
+     * Number of words of every sentence including duplicates
+     */
+    private final int[] wordCounts;
+
+    /**
+     * Initial length of every sentence
+     */
+    private final int[] initialLengths;
+
+    /**
+     * Sentence IDs
+     */
+    private final int[] sentenceIds;
+
+    /**
+     * Sum of the lengths of the distinct words of every sentence
+     */
+    private final int[] distinctLengths;
+
+    /**
+     * Measure which turns the matched words into a similarity
+     */
+    private final SimilarityMeasure measure;
+
+    /**
+     * Largest quotient of distinct word length and initial length of any sentence
+     */
+    private double maxLengthRatio = 0.0;
+
+    /**
+     * Encodes all sentences of the given list for the {@link similarity.WeightedMeasure}
+     *
+     * @param sentenceList Sentences which should be encoded
+     * @param dictionary Dictionary which receives all words
+     */
+    public EncodedSentenceList(SentenceList sentenceList, WordDictionary dictionary) {
+        this(sentenceList, dictionary, new WeightedMeasure());
+    }
+
+    /**
+     * Encodes all sentences of the given list
+     *
+     * @param sentenceList Sentences which should be encoded
+     * @param dictionary Dictionary which receives all words
+     * @param measure Measure used by {@link #similarity(int, int)}
+     */
+    public EncodedSentenceList(SentenceList sentenceList, WordDictionary dictionary, SimilarityMeasure measure) {
+        int size = sentenceList.size();
+        this.dictionary = dictionary;
+        this.measure = measure;
+        this.words = new int[size][];
+        this.wordCounts = new int[size];
+        this.initialLengths = new int[size];
+        this.sentenceIds = new int[size];
+        this.distinctLengths = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Sentence sentence = sentenceList.get(i);
+            int[] ids = new int[sentence.size()];
+            for (int k = 0; k < ids.length; k++) {
+                ids[k] = dictionary.id(sentence.get(k));
+            }
+            words[i] = distinct(ids);
+            wordCounts[i] = sentence.size();
+            initialLengths[i] = sentence.getInitiallength();
+            sentenceIds[i] = sentence.getId();
+            for (int id : words[i]) {
+                distinctLengths[i] += dictionary.length(id);
+            }
+            if (distinctLengths[i] > 0) {
+                maxLengthRatio = (initialLengths[i] > 0)
+                        ? Math.max(maxLengthRatio, (double) distinctLengths[i] / initialLengths[i])
+                        : Double.POSITIVE_INFINITY;
+            }
+        }
+    }
+
+    /**
+     * Sorts the given IDs and removes duplicates
+     *
+     * @param ids Word IDs, will be sorted in place
+     * @return Sorted and distinct IDs
+     */
+    private static int[] distinct(int[] ids) {
+        Arrays.sort(ids);
+        int count = 0;
+        for (int k = 0; k < ids.length; k++) {
+            if (count == 0 || ids[count - 1] != ids[k]) {
+                ids[count++] = ids[k];
+            }
+        }
+        return (count == ids.length) ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Computes the similarity of two sentences by the measure of this list
+     * by a merge intersection of their word IDs. Does not allocate any memory.
+     *
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @return Similarity between the given sentences
+     */
+    public float similarity(int a, int b) {
+        int[] w1 = words[a];
+        int[] w2 = words[b];
+        int[] lengths = dictionary.lengths();
+
+        int match_length = 0;
+        int matched_wordcount = 0;
+        int x = 0;
+        int y = 0;
+        while (x < w1.length && y < w2.length) {
+            int id1 = w1[x];
+            int id2 = w2[y];
+            if (id1 == id2) {
+                matched_wordcount++;
+                match_length += lengths[id1];
+                x++;
+                y++;
+            } else if (id1 < id2) {
+                x++;
+            } else {
+                y++;
+            }
+        }
+
+        return measure.similarity(this, a, b, matched_wordcount, match_length);
+    }
+
+    /**
+     * Computes the similarity of two sentences like {@link #similarity(int, int)}, but abandons the pair
+     * as soon as it can not exceed the threshold anymore.
+     * While merging the word IDs in ascending order the best reachable score assumes, that all remaining
+     * words of the shorter rest match with the smaller remaining length. Every mismatch lowers this bound.
+     * Every measure grows with both counts, so the bound is the measure of these counts.
+     *
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @param threshold Similarity threshold
+     * @return Similarity between the given sentences or 0, if the pair has been abandoned below the threshold
+     */
+    public float similarity(int a, int b, double threshold) {
+        int[] w1 = words[a];
+        int[] w2 = words[b];
+        int[] lengths = dictionary.lengths();
+
+        double limit = threshold - EPS;
+        int remaining1 = distinctLengths[a];
+        int remaining2 = distinctLengths[b];
+
+        int match_length = 0;
+        int matched_wordcount = 0;
+        int x = 0;
+        int y = 0;
+        while (x < w1.length && y < w2.length) {
+            int id1 = w1[x];
+            int id2 = w2[y];
+            if (id1 == id2) {
+                matched_wordcount++;
+                match_length += lengths[id1];
+                remaining1 -= lengths[id1];
+                remaining2 -= lengths[id2];
+                x++;
+                y++;
+                continue;
+            }
+            if (id1 < id2) {
+                remaining1 -= lengths[id1];
+                x++;
+            } else {
+                remaining2 -= lengths[id2];
+                y++;
+            }
+            float bound = measure.similarity(this, a, b, matched_wordcount + Math.min(w1.length - x, w2.length - y),
+                    match_length + Math.min(remaining1, remaining2));
+            if (bound <= limit) {
+                return 0.0f;
+            }
+        }
+
+        return measure.similarity(this, a, b, matched_wordcount, match_length);
+    }
+
+    /**
+     * Upper bound of {@link #similarity(int, int)} without comparing the words.
+     * At most all distinct words of the smaller sentence can match.
+     *
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @return Upper bound of the similarity
+     */
+    public double upperBound(int a, int b) {
+        return measure.upperBound(this, a, b);
+    }
+
+    /**
+     * @return Measure used by {@link #similarity(int, int)}
+     */
+    public SimilarityMeasure measure() {
+        return measure;
+    }
+
+    /**
+     * @return Largest quotient of distinct word length and initial length of any sentence,
+     * infinite if a sentence with words has no initial length
+     */
+    public double maxLengthRatio() {
+        return maxLengthRatio;
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Sorted and distinct word IDs of the sentence
+     */
+    public int[] words(int i) {
+        return words[i];
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Number of words including duplicates
+     */
+    public int wordCount(int i) {
+        return wordCounts[i];
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Initial length of the sentence
+     */
+    public int initialLength(int i) {
+        return initialLengths[i];
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Sum of the lengths of the distinct words
+     */
+    public int distinctLength(int i) {
+        return distinctLengths[i];
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return ID of the sentence
+     */
+    public int id(int i) {
+        return sentenceIds[i];
+    }
+
+    /**
+     * @return Dictionary used for the encoding
+     */
+    public WordDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return Number of sentences
+     */
+    public int size() {
+        return words.length;
+    }
+}
@@ -0,0 +1,120 @@
+package similarity;
+
+import java.util.Arrays;
+
+/**
+ * Posting list index from rare words to the sentences containing them.
+ * Used by {@link similarity.SimilarityMatrix} to generate candidate pairs
+ * instead of comparing every sentence with every other sentence.
+ *
+ * @author Martin Stoffers
+ */
+public class InvertedIndex {
+
+    /**
+     * Contains for every word ID the ascending positions of all sentences containing it
+     */
+    private final int[][] postings;
+
+    /**
+     * Encoded sentences of the index
+     */
+    private final EncodedSentenceList sentences;
+
+    /**
+     * Builds the posting lists for the given sentences.
+     * A sentence is listed only once per word, even if the word occurs several times in it.
+     *
+     * @param sentences Sentences which should be indexed
+     */
+    public InvertedIndex(EncodedSentenceList sentences) {
+        this.sentences = sentences;
+        int words = sentences.dictionary().size();
+
+        // first pass: document frequency of every word
+        int[] counts = new int[words];
+        for (int i = 0; i < sentences.size(); i++) {
+            for (int id : sentences.words(i)) {
+                counts[id]++;
+            }
+        }
+
+        // second pass: fill the posting lists in ascending sentence order
+        postings = new int[words][];
+        for (int id = 0; id < words; id++) {
+            postings[id] = new int[counts[id]];
+        }
+        int[] fill = new int[words];
+        for (int i = 0; i < sentences.size(); i++) {
+            for (int id : sentences.words(i)) {
+                postings[id][fill[id]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Collects all sentences behind position i, which share at least one word with it.
+     * The positions are written unsorted into candidates.
+     *
+     * @param i Position of the sentence in the indexed list
+     * @param stamp Scratch array of the size of the indexed list, which marks already collected sentences.
+     *              Must not contain the value i before the call
+     * @param candidates Receives the positions of all candidates
+     * @return Number of candidates written to candidates
+     */
+    public int candidates(int i, int[] stamp, int[] candidates) {
+        int count = 0;
+        for (int id : sentences.words(i)) {
+            int[] posting = postings[id];
+            int start = Arrays.binarySearch(posting, i);
+            start = (start < 0) ? -start - 1 : start + 1;
+            for (int k = start; k < posting.length; k++) {
+                int j = posting[k];
+                if (stamp[j] != i) {
+                    stamp[j] = i;
+                    candidates[count++] = j;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Collects all other sentences, which share at least one word with the sentence at position i.
+     * The positions are written unsorted into partners.
+     *
+     * @param i Position of the sentence in the indexed list
+     * @param stamp Scratch array of the size of the indexed list, which marks already collected sentences.
+     *              Must not contain the value i before the call
+     * @param partners Receives the positions of all partners
+     * @return Number of partners written to partners
+     */
+    public int partners(int i, int[] stamp, int[] partners) {
+        int count = 0;
+        stamp[i] = i;
+        for (int id : sentences.words(i)) {
+            for (int j : postings[id]) {
+                if (stamp[j] != i) {
+                    stamp[j] = i;
+                    partners[count++] = j;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param id ID of a word
+     * @return Ascending positions of all sentences containing the word
+     */
+    public int[] posting(int id) {
+        return postings[id];
+    }
+
+    /**
+     * @return Number of indexed words
+     */
+    public int size() {
+        return postings.length;
+    }
+}
@@ -0,0 +1,57 @@
+package similarity;
+
+/**
+ * Jaccard coefficient of the distinct words: matched / (distinct(a) + distinct(b) - matched).
+ * <p>
+ * A pair exceeds the threshold t only if matched &gt; t / (1 + t) * (distinct(a) + distinct(b)).
+ *
+ * @author Martin Stoffers
+ */
+public class JaccardMeasure implements SimilarityMeasure {
+
+    @Override
+    public String getName() {
+        return "jaccard";
+    }
+
+    @Override
+    public float similarity(EncodedSentenceList sentences, int a, int b, int matched, int matchLength) {
+        int union = sentences.words(a).length + sentences.words(b).length - matched;
+        return (union > 0) ? (float) matched / union : 0.0f;
+    }
+
+    @Override
+    public double upperBound(EncodedSentenceList sentences, int a, int b) {
+        int ua = sentences.words(a).length;
+        int ub = sentences.words(b).length;
+        return (ua > 0 && ub > 0) ? (double) Math.min(ua, ub) / Math.max(ua, ub) : 0.0;
+    }
+
+    @Override
+    public int size(EncodedSentenceList sentences, int i) {
+        return sentences.words(i).length;
+    }
+
+    @Override
+    public double windowBound(EncodedSentenceList sentences, int a, int partnerSize) {
+        return (partnerSize > 0) ? (double) sentences.words(a).length / partnerSize : 0.0;
+    }
+
+    @Override
+    public int requiredOverlap(EncodedSentenceList sentences, int a, int b, double threshold) {
+        return SimilarityMeasures.requiredOverlap(threshold / (1 + threshold) * (sentences.words(a).length + sentences.words(b).length));
+    }
+
+    @Override
+    public int probePrefix(EncodedSentenceList sentences, int a, double threshold) {
+        // matched can not be larger than the smaller sentence, so every partner has more than t * distinct(a) words
+        int distinct = sentences.words(a).length;
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(threshold * distinct));
+    }
+
+    @Override
+    public int indexPrefix(EncodedSentenceList sentences, int a, double threshold) {
+        int distinct = sentences.words(a).length;
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(2 * threshold / (1 + threshold) * distinct));
+    }
+}
@@ -0,0 +1,175 @@
+package similarity;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Brute force comparison restricted to a sliding window over the sentences sorted by
+ * {@link similarity.SimilarityMeasure#size} and initial length.
+ * <p>
+ * {@link similarity.SimilarityMeasure#windowBound} bounds the similarity of a sentence to every larger partner.
+ * This bound falls with the size of the partner, so the inner loop over the sorted sentences stops as soon as
+ * it is below the threshold.
+ * Inside the window every pair is checked by {@link similarity.EncodedSentenceList#upperBound(int, int)}
+ * before it is scored. The result is the same as comparing every pair.
+ *
+ * @author Martin Stoffers
+ */
+public class LengthWindowBlocking {
+
+    /**
+     * Logger object
+     */
+    private static final Logger log = Logger.getLogger(LengthWindowBlocking.class.getName());
+
+    /**
+     * Safety margin for all floating point bounds, so no pair above the threshold is lost by rounding
+     */
+    private static final double EPS = SimilarityMeasures.EPS;
+
+    /**
+     * Sentences to be compared
+     */
+    private final EncodedSentenceList sentences;
+
+    /**
+     * Similarity threshold
+     */
+    private final double threshold;
+
+    /**
+     * Number of all pairs
+     */
+    private long pairs = 0;
+
+    /**
+     * Pairs inside the windows
+     */
+    private long windowed = 0;
+
+    /**
+     * Pairs inside the windows dropped by their upper bound
+     */
+    private long boundPruned = 0;
+
+    /**
+     * Pairs which have been scored
+     */
+    private long scored = 0;
+
+    /**
+     * @param sentences Sentences to be compared
+     * @param threshold Similarity threshold, must not be negative
+     */
+    public LengthWindowBlocking(EncodedSentenceList sentences, double threshold) {
+        this.sentences = sentences;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Finds all pairs with a similarity above the threshold
+     *
+     * @return Entries ordered like in {@link similarity.SimilarityMatrix}, by position of the first and then the second sentence
+     */
+    public SimilarityResults join() {
+        final int size = sentences.size();
+        pairs = ((long) size * ((long) size - 1)) / 2;
+
+        // sentences by size and then by initial length
+        SimilarityMeasure measure = sentences.measure();
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) measure.size(sentences, i) << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] sorted = new int[size];
+        int[] sizes = new int[size];
+        for (int start = 0; start < size; ) {
+            int end = start + 1;
+            while (end < size && (order[end] >>> 32) == (order[start] >>> 32)) {
+                end++;
+            }
+            long[] run = new long[end - start];
+            for (int x = start; x < end; x++) {
+                int i = (int) order[x];
+                run[x - start] = ((long) sentences.initialLength(i) << 32) | i;
+            }
+            Arrays.sort(run);
+            for (int x = start; x < end; x++) {
+                sorted[x] = (int) run[x - start];
+                sizes[x] = (int) (order[start] >>> 32);
+            }
+            start = end;
+        }
+
+        // positions instead of sentence IDs, so the result can be sorted like the brute force loop
+        SimilarityResults found = new SimilarityResults();
+        for (int x = 0; x < size; x++) {
+            int a = sorted[x];
+            if (sentences.words(a).length == 0) {
+                continue;
+            }
+            for (int y = x + 1; y < size; y++) {
+                // the window ends, where no longer partner can reach the threshold
+                if (measure.windowBound(sentences, a, sizes[y]) + EPS <= threshold) {
+                    break;
+                }
+                windowed++;
+                int b = sorted[y];
+                if (sentences.upperBound(a, b) + EPS <= threshold) {
+                    boundPruned++;
+                    continue;
+                }
+                int first = Math.min(a, b);
+                int second = Math.max(a, b);
+                float similarity = sentences.similarity(first, second);
+                scored++;
+                if (similarity > threshold) {
+                    found.add(first, second, similarity);
+                }
+            }
+        }
+
+        // restore the order of the brute force loop
+        found.sortByKey();
+        SimilarityResults ordered = new SimilarityResults(found.size());
+        for (int row = 0; row < found.size(); row++) {
+            ordered.add(sentences.id(found.getSentenceId1(row)), sentences.id(found.getSentenceId2(row)), found.getSimilarity(row));
+        }
+
+        System.out.println("Length window scored " + scored + " of " + pairs + " pairs");
+        System.out.println("\tpruned by window: " + (pairs - windowed));
+        System.out.println("\tpruned by upper bound: " + boundPruned);
+        log.info("Length window: " + pairs + " pairs, " + (pairs - windowed) + " outside the windows, "
+                + boundPruned + " pruned by upper bound, " + scored + " scored, " + ordered.size() + " found");
+        return ordered;
+    }
+
+    /**
+     * @return Number of all pairs
+     */
+    public long getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @return Pairs inside the windows
+     */
+    public long getWindowed() {
+        return windowed;
+    }
+
+    /**
+     * @return Pairs inside the windows dropped by their upper bound
+     */
+    public long getBoundPruned() {
+        return boundPruned;
+    }
+
+    /**
+     * @return Pairs which have been scored
+     */
+    public long getScored() {
+        return scored;
+    }
+}
@@ -0,0 +1,247 @@
+package similarity;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate similarity join by MinHash signatures and banded locality sensitive hashing.
+ * <p>
+ * Every sentence gets a signature of bands * rows MinHash values of its rare word set.
+ * Two sentences become a candidate pair, if all rows of at least one band are equal.
+ * The probability of this grows with the Jaccard similarity of both word sets, more bands find more pairs,
+ * more rows per band drop more dissimilar pairs.
+ * Only the candidates are scored by {@link similarity.EncodedSentenceList#similarity(int, int)}, so every
+ * found similarity is exact, but pairs may be missed. {@link #recall(double, int, long)} measures how many.
+ *
+ * @author Martin Stoffers
+ */
+public class MinHashLsh {
+
+    /**
+     * Sentences to be joined
+     */
+    private final EncodedSentenceList sentences;
+
+    /**
+     * Number of bands
+     */
+    private final int bands;
+
+    /**
+     * Number of rows per band
+     */
+    private final int rows;
+
+    /**
+     * MinHash values of every sentence, bands * rows per sentence
+     */
+    private final int[] signatures;
+
+    /**
+     * Sorted candidate pairs as packed positions, see {@link similarity.SimilarityResults#key(int, int)}
+     */
+    private long[] candidates = new long[0];
+
+    /**
+     * Exact pairs above the threshold found in the last recall sample
+     */
+    private long sampledPairs = 0;
+
+    /**
+     * Pairs of the last recall sample, which have been candidates
+     */
+    private long sampledHits = 0;
+
+    /**
+     * Computes the signatures of all sentences
+     *
+     * @param sentences Sentences to be joined
+     * @param bands Number of bands
+     * @param rows Number of rows per band
+     * @param seed Seed of the hash functions
+     * @throws IllegalArgumentException Thrown, if the signatures of all sentences do not fit into an array
+     */
+    public MinHashLsh(EncodedSentenceList sentences, int bands, int rows, long seed) {
+        this.sentences = sentences;
+        this.bands = bands;
+        this.rows = rows;
+        long slots = (long) bands * rows;
+        if (slots > Integer.MAX_VALUE - 8 || slots * sentences.size() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("similarityLshBands " + bands + " and similarityLshRows " + rows
+                    + " are too large for " + sentences.size() + " sentences, the signatures of all sentences must have less than "
+                    + Integer.MAX_VALUE + " slots");
+        }
+
+        int hashes = bands * rows;
+        long[] multipliers = new long[hashes];
+        long[] offsets = new long[hashes];
+        Random random = new Random(seed);
+        for (int h = 0; h < hashes; h++) {
+            multipliers[h] = random.nextLong() | 1L;
+            offsets[h] = random.nextLong();
+        }
+
+        signatures = new int[sentences.size() * hashes];
+        for (int i = 0; i < sentences.size(); i++) {
+            int[] words = sentences.words(i);
+            int base = i * hashes;
+            for (int h = 0; h < hashes; h++) {
+                int min = Integer.MAX_VALUE;
+                for (int id : words) {
+                    int value = (int) ((multipliers[h] * id + offsets[h]) >>> 32);
+                    if (value < min) {
+                        min = value;
+                    }
+                }
+                signatures[base + h] = min;
+            }
+        }
+    }
+
+    /**
+     * Scores all candidate pairs
+     *
+     * @param threshold Similarity threshold
+     * @return Entries above the threshold ordered like in {@link similarity.SimilarityMatrix}
+     */
+    public SimilarityResults join(double threshold) {
+        final int size = sentences.size();
+        int hashes = bands * rows;
+        long[] keys = new long[size];
+        long[] found = new long[16];
+        int count = 0;
+
+        for (int band = 0; band < bands; band++) {
+            // bucket key of the band in the upper half, position in the lower half
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (sentences.words(i).length == 0) {
+                    continue;
+                }
+                int hash = 1;
+                for (int r = 0; r < rows; r++) {
+                    hash = 31 * hash + signatures[i * hashes + band * rows + r];
+                }
+                hash *= 0x9E3779B9;
+                keys[n++] = ((long) hash << 32) | i;
+            }
+            Arrays.sort(keys, 0, n);
+
+            for (int start = 0; start < n; ) {
+                int end = start + 1;
+                while (end < n && (keys[end] >>> 32) == (keys[start] >>> 32)) {
+                    end++;
+                }
+                for (int x = start; x < end; x++) {
+                    for (int y = x + 1; y < end; y++) {
+                        if (count == found.length) {
+                            count = unique(found, count);
+                            if (count > found.length / 2) {
+                                found = Arrays.copyOf(found, found.length * 2);
+                            }
+                        }
+                        // positions are ascending within a bucket
+                        found[count++] = SimilarityResults.key((int) keys[x], (int) keys[y]);
+                    }
+                }
+                start = end;
+            }
+        }
+        count = unique(found, count);
+        candidates = Arrays.copyOf(found, count);
+
+        SimilarityResults entries = new SimilarityResults();
+        for (long key : candidates) {
+            int i = (int) (key >>> 32);
+            int j = (int) key;
+            float similarity = sentences.similarity(i, j);
+            if (similarity > threshold) {
+                entries.add(sentences.id(i), sentences.id(j), similarity);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Sorts the first keys and removes duplicates
+     *
+     * @return Number of distinct keys
+     */
+    private static int unique(long[] keys, int count) {
+        Arrays.sort(keys, 0, count);
+        int distinct = 0;
+        for (int k = 0; k < count; k++) {
+            if (distinct == 0 || keys[distinct - 1] != keys[k]) {
+                keys[distinct++] = keys[k];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Compares the candidates of the last {@link #join(double)} with the exact result on a sample.
+     * For every sampled sentence all partners above the threshold are computed exactly by an {@link similarity.InvertedIndex}.
+     *
+     * @param threshold Similarity threshold of the join
+     * @param sample Number of sampled sentences
+     * @param seed Seed of the sample
+     * @return Share of the exact pairs found by the join, 1 if the sample has no pairs above the threshold
+     */
+    public double recall(double threshold, int sample, long seed) {
+        final int size = sentences.size();
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        Random random = new Random(seed);
+        sample = Math.min(sample, size);
+        for (int k = 0; k < sample; k++) {
+            int pick = k + random.nextInt(size - k);
+            int tmp = positions[k];
+            positions[k] = positions[pick];
+            positions[pick] = tmp;
+        }
+
+        InvertedIndex index = new InvertedIndex(sentences);
+        int[] stamp = new int[size];
+        Arrays.fill(stamp, -1);
+        int[] partners = new int[size];
+        sampledPairs = 0;
+        sampledHits = 0;
+        for (int k = 0; k < sample; k++) {
+            int i = positions[k];
+            int count = index.partners(i, stamp, partners);
+            for (int p = 0; p < count; p++) {
+                int j = partners[p];
+                if (sentences.similarity(Math.min(i, j), Math.max(i, j)) > threshold) {
+                    sampledPairs++;
+                    if (Arrays.binarySearch(candidates, SimilarityResults.key(Math.min(i, j), Math.max(i, j))) >= 0) {
+                        sampledHits++;
+                    }
+                }
+            }
+        }
+        return (sampledPairs > 0) ? (double) sampledHits / sampledPairs : 1.0;
+    }
+
+    /**
+     * @return Number of candidate pairs of the last {@link #join(double)}
+     */
+    public long getCandidates() {
+        return candidates.length;
+    }
+
+    /**
+     * @return Exact pairs above the threshold in the last recall sample
+     */
+    public long getSampledPairs() {
+        return sampledPairs;
+    }
+
+    /**
+     * @return Pairs of the last recall sample found by the join
+     */
+    public long getSampledHits() {
+        return sampledHits;
+    }
+}
@@ -0,0 +1,55 @@
+package similarity;
+
+/**
+ * Overlap coefficient of the distinct words: matched / min(distinct(a), distinct(b)).
+ * A sentence contained in another one has a similarity of 1.
+ * <p>
+ * A pair exceeds the threshold t only if matched &gt; t * min(distinct(a), distinct(b)).
+ * A small partner needs only a single match, so only the index prefix can be shortened.
+ *
+ * @author Martin Stoffers
+ */
+public class OverlapMeasure implements SimilarityMeasure {
+
+    @Override
+    public String getName() {
+        return "overlap";
+    }
+
+    @Override
+    public float similarity(EncodedSentenceList sentences, int a, int b, int matched, int matchLength) {
+        int smaller = Math.min(sentences.words(a).length, sentences.words(b).length);
+        return (smaller > 0) ? (float) matched / smaller : 0.0f;
+    }
+
+    @Override
+    public double upperBound(EncodedSentenceList sentences, int a, int b) {
+        return (sentences.words(a).length > 0 && sentences.words(b).length > 0) ? 1.0 : 0.0;
+    }
+
+    @Override
+    public int size(EncodedSentenceList sentences, int i) {
+        return sentences.words(i).length;
+    }
+
+    @Override
+    public double windowBound(EncodedSentenceList sentences, int a, int partnerSize) {
+        return (sentences.words(a).length > 0) ? 1.0 : 0.0;
+    }
+
+    @Override
+    public int requiredOverlap(EncodedSentenceList sentences, int a, int b, double threshold) {
+        return SimilarityMeasures.requiredOverlap(threshold * Math.min(sentences.words(a).length, sentences.words(b).length));
+    }
+
+    @Override
+    public int probePrefix(EncodedSentenceList sentences, int a, double threshold) {
+        return sentences.words(a).length;
+    }
+
+    @Override
+    public int indexPrefix(EncodedSentenceList sentences, int a, double threshold) {
+        int distinct = sentences.words(a).length;
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(threshold * distinct));
+    }
+}
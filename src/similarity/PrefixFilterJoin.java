@@ -0,0 +1,247 @@
+package similarity;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Threshold driven similarity join in the style of AllPairs/PPJoin.
+ * <p>
+ * The {@link similarity.SimilarityMeasure} of the sentences gives a lower bound of the overlap,
+ * which a pair needs to reach the threshold. This bound is used for
+ * <ul>
+ *     <li>a prefix filter, which indexes and probes only the rarest words of every sentence,</li>
+ *     <li>a length filter, which drops pairs whose upper bound is below the threshold,</li>
+ *     <li>a positional filter, which drops pairs, whose remaining words can not reach the overlap.</li>
+ * </ul>
+ * Only the surviving candidates are scored. The result is the same as comparing every pair.
+ *
+ * @author Martin Stoffers
+ */
+public class PrefixFilterJoin {
+
+    /**
+     * Logger object
+     */
+    private static final Logger log = Logger.getLogger(PrefixFilterJoin.class.getName());
+
+    /**
+     * Safety margin for all floating point bounds, so no pair above the threshold is lost by rounding
+     */
+    private static final double EPS = SimilarityMeasures.EPS;
+
+    /**
+     * Sentences to be joined
+     */
+    private final EncodedSentenceList sentences;
+
+    /**
+     * Similarity threshold
+     */
+    private final double threshold;
+
+    /**
+     * Number of compared pairs
+     */
+    private long pairs = 0;
+
+    /**
+     * Pairs dropped by the length filter
+     */
+    private long lengthPruned = 0;
+
+    /**
+     * Pairs dropped by the positional filter
+     */
+    private long positionPruned = 0;
+
+    /**
+     * Pairs which have been scored
+     */
+    private long verified = 0;
+
+    /**
+     * @param sentences Sentences to be joined
+     * @param threshold Similarity threshold, must not be negative
+     */
+    public PrefixFilterJoin(EncodedSentenceList sentences, double threshold) {
+        this.sentences = sentences;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Finds all pairs with a similarity above the threshold
+     *
+     * @return Entries ordered like in {@link similarity.SimilarityMatrix}, by position of the first and then the second sentence
+     */
+    public SimilarityResults join() {
+        final int size = sentences.size();
+        pairs = ((long) size * ((long) size - 1)) / 2;
+
+        // global order of the words: rarest first
+        int words = sentences.dictionary().size();
+        int[] frequency = new int[words];
+        for (int i = 0; i < size; i++) {
+            for (int id : sentences.words(i)) {
+                frequency[id]++;
+            }
+        }
+        long[] order = new long[words];
+        for (int id = 0; id < words; id++) {
+            order[id] = ((long) frequency[id] << 32) | id;
+        }
+        Arrays.sort(order);
+        int[] rank = new int[words];
+        for (int r = 0; r < words; r++) {
+            rank[(int) order[r]] = r;
+        }
+
+        // sentences by size, words by rank
+        SimilarityMeasure measure = sentences.measure();
+        long[] bySize = new long[size];
+        for (int i = 0; i < size; i++) {
+            bySize[i] = ((long) measure.size(sentences, i) << 32) | i;
+        }
+        Arrays.sort(bySize);
+        int[] position = new int[size];
+        int[][] ranked = new int[size][];
+        for (int x = 0; x < size; x++) {
+            int i = (int) bySize[x];
+            position[x] = i;
+            int[] ids = sentences.words(i);
+            int[] r = new int[ids.length];
+            for (int k = 0; k < ids.length; k++) {
+                r[k] = rank[ids[k]];
+            }
+            Arrays.sort(r);
+            ranked[x] = r;
+        }
+        System.out.println("Prefix filter join with measure " + measure.getName());
+
+        // posting lists of the indexed prefixes, sentence and position of the word
+        int[][] postSentence = new int[words][];
+        int[][] postPosition = new int[words][];
+        int[] postSize = new int[words];
+
+        int[] overlap = new int[size];
+        int[] touched = new int[size];
+        // positions instead of sentence IDs, so the result can be sorted like the brute force loop
+        SimilarityResults found = new SimilarityResults();
+
+        for (int y = 0; y < size; y++) {
+            int[] ry = ranked[y];
+            int uy = ry.length;
+            if (uy == 0) {
+                continue;
+            }
+            int i2 = position[y];
+
+            // probe prefix: the smallest possible partner bounds the overlap
+            int probePrefix = measure.probePrefix(sentences, i2, threshold);
+
+            int count = 0;
+            for (int py = 0; py < probePrefix; py++) {
+                int token = ry[py];
+                int[] ps = postSentence[token];
+                int[] pp = postPosition[token];
+                for (int k = 0; k < postSize[token]; k++) {
+                    int x = ps[k];
+                    if (overlap[x] < 0) {
+                        continue;
+                    }
+                    int ux = ranked[x].length;
+                    if (overlap[x] == 0) {
+                        touched[count++] = x;
+                        if (measure.upperBound(sentences, position[x], i2) + EPS <= threshold) {
+                            overlap[x] = -1;
+                            lengthPruned++;
+                            continue;
+                        }
+                    }
+                    int possible = overlap[x] + 1 + Math.min(ux - pp[k] - 1, uy - py - 1);
+                    if (possible < measure.requiredOverlap(sentences, position[x], i2, threshold)) {
+                        overlap[x] = -1;
+                        positionPruned++;
+                        continue;
+                    }
+                    overlap[x]++;
+                }
+            }
+
+            // verify the surviving candidates
+            for (int k = 0; k < count; k++) {
+                int x = touched[k];
+                if (overlap[x] > 0) {
+                    int first = Math.min(position[x], i2);
+                    int second = Math.max(position[x], i2);
+                    float similarity = sentences.similarity(first, second);
+                    verified++;
+                    if (similarity > threshold) {
+                        found.add(first, second, similarity);
+                    }
+                }
+                overlap[x] = 0;
+            }
+
+            // index prefix: every later partner is at least as large
+            int indexPrefix = measure.indexPrefix(sentences, i2, threshold);
+            for (int py = 0; py < indexPrefix; py++) {
+                int token = ry[py];
+                if (postSentence[token] == null) {
+                    postSentence[token] = new int[4];
+                    postPosition[token] = new int[4];
+                } else if (postSize[token] == postSentence[token].length) {
+                    postSentence[token] = Arrays.copyOf(postSentence[token], postSize[token] * 2);
+                    postPosition[token] = Arrays.copyOf(postPosition[token], postSize[token] * 2);
+                }
+                postSentence[token][postSize[token]] = y;
+                postPosition[token][postSize[token]] = py;
+                postSize[token]++;
+            }
+        }
+
+        // restore the order of the brute force loop
+        found.sortByKey();
+        SimilarityResults ordered = new SimilarityResults(found.size());
+        for (int row = 0; row < found.size(); row++) {
+            ordered.add(sentences.id(found.getSentenceId1(row)), sentences.id(found.getSentenceId2(row)), found.getSimilarity(row));
+        }
+
+        long prefixPruned = pairs - lengthPruned - positionPruned - verified;
+        System.out.println("Prefix filter join scored " + verified + " of " + pairs + " pairs");
+        System.out.println("\tpruned by prefix filter: " + prefixPruned);
+        System.out.println("\tpruned by length filter: " + lengthPruned);
+        System.out.println("\tpruned by positional filter: " + positionPruned);
+        log.info("Prefix filter join: " + pairs + " pairs, " + prefixPruned + " pruned by prefix, "
+                + lengthPruned + " pruned by length, " + positionPruned + " pruned by position, "
+                + verified + " verified, " + ordered.size() + " found");
+        return ordered;
+    }
+
+    /**
+     * @return Number of compared pairs
+     */
+    public long getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @return Pairs dropped by the length filter
+     */
+    public long getLengthPruned() {
+        return lengthPruned;
+    }
+
+    /**
+     * @return Pairs dropped by the positional filter
+     */
+    public long getPositionPruned() {
+        return positionPruned;
+    }
+
+    /**
+     * @return Pairs which have been scored
+     */
+    public long getVerified() {
+        return verified;
+    }
+}
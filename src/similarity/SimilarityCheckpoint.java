@@ -0,0 +1,184 @@
+package similarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a long running {@link similarity.SimilarityMatrix} calculation.
+ * The checkpoint records the next row, the number of entries already flushed to the sink,
+ * the counters and a fingerprint of the options and the reduced sentences.
+ * A restarted calculation with the same fingerprint continues at the recorded row.
+ * <p>
+ * The file is written to a temporary file first and then renamed, so a crash never leaves a broken checkpoint.
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityCheckpoint {
+
+    /**
+     * Prefix of the keys of the {@link similarity.SimilarityStatistics}
+     */
+    private static final String STATISTICS = "statistics.";
+
+    /**
+     * File holding the checkpoint
+     */
+    private final File file;
+
+    /**
+     * Milliseconds between two checkpoints
+     */
+    private final long interval;
+
+    /**
+     * Time of the last saved checkpoint
+     */
+    private long lastSave;
+
+    /**
+     * Fingerprint of the calculation
+     */
+    private String fingerprint = null;
+
+    /**
+     * Next row to be calculated
+     */
+    private int row = 0;
+
+    /**
+     * Entries flushed to the sink up to {@link #row}
+     */
+    private long similarityCount = 0;
+
+    /**
+     * Counters and histogram of all pairs up to {@link #row}
+     */
+    private SimilarityStatistics statistics = new SimilarityStatistics();
+
+    /**
+     * @param file File holding the checkpoint
+     * @param interval Seconds between two checkpoints
+     */
+    public SimilarityCheckpoint(File file, int interval) {
+        this.file = file;
+        this.interval = 1000L * interval;
+        this.lastSave = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the checkpoint file, if it exists
+     *
+     * @param fingerprint Fingerprint of the current calculation
+     * @return True if the file belongs to the current calculation, false if it has to start from scratch
+     * @throws IOException Thrown, if the file could not be read
+     */
+    public boolean load(String fingerprint) throws IOException {
+        this.fingerprint = fingerprint;
+        this.row = 0;
+        this.similarityCount = 0;
+        this.statistics = new SimilarityStatistics();
+        if (!file.exists()) {
+            return false;
+        }
+
+        Properties properties = new Properties();
+        BufferedInputStream stream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            properties.load(stream);
+        } finally {
+            stream.close();
+        }
+        if (!fingerprint.equals(properties.getProperty("fingerprint"))) {
+            return false;
+        }
+        // checkpoints of older versions have no statistics
+        if (properties.getProperty(STATISTICS + "buckets") == null) {
+            return false;
+        }
+        try {
+            this.row = Integer.parseInt(properties.getProperty("row"));
+            this.similarityCount = Long.parseLong(properties.getProperty("similarityCount"));
+            this.statistics = SimilarityStatistics.load(properties, STATISTICS);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint file " + file, e);
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the interval since the last checkpoint has passed
+     */
+    public boolean isDue() {
+        return System.currentTimeMillis() - lastSave >= interval;
+    }
+
+    /**
+     * Records the progress. All entries up to the given row must have been flushed to the sink before.
+     *
+     * @param row Next row to be calculated
+     * @param similarityCount Entries flushed to the sink
+     * @param statistics Counters and histogram of all pairs
+     * @throws IOException Thrown, if the file could not be written
+     */
+    public void save(int row, long similarityCount, SimilarityStatistics statistics) throws IOException {
+        this.row = row;
+        this.similarityCount = similarityCount;
+        this.statistics = statistics;
+
+        Properties properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        properties.setProperty("row", Integer.toString(row));
+        properties.setProperty("similarityCount", Long.toString(similarityCount));
+        statistics.store(properties, STATISTICS);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            BufferedOutputStream stream = new BufferedOutputStream(out);
+            properties.store(stream, "similarity checkpoint");
+            stream.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSave = System.currentTimeMillis();
+    }
+
+    /**
+     * Removes the checkpoint file after the results have been stored completely
+     *
+     * @throws IOException Thrown, if the file could not be removed
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * @return Next row to be calculated
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return Entries flushed to the sink up to {@link #getRow()}
+     */
+    public long getSimilarityCount() {
+        return similarityCount;
+    }
+
+    /**
+     * @return Counters and histogram of all pairs up to {@link #getRow()}
+     */
+    public SimilarityStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -29,15 +29,30 @@ public class SimilarityEntry {
         if (!(o instanceof SimilarityEntry))
             return false;
         SimilarityEntry similarityEntryo = (SimilarityEntry) o;
-        return this.sentenceId_1.equals(similarityEntryo.sentenceId_1) &&
-               this.sentenceId_2.equals(similarityEntryo.sentenceId_2);
+        return this.getKey() == similarityEntryo.getKey();
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.valueOf(getKey()).hashCode();
+    }
+
+    /**
+     * Returns the pair of this entry packed into one long, see {@link similarity.SimilarityResults#key(int, int)}
+     *
+     * @return Key of the pair
+     */
+    public long getKey() {
+        return SimilarityResults.key(sentenceId_1, sentenceId_2);
     }
 
     /**
      * Returns the calculated hash of an SimilarityEntry
      *
+     * @deprecated Replaced by the packed key of {@link #getKey()}
      * @return Hash of object
      */
+    @Deprecated
     public String getHash(){
         return (sentenceId_1 + ":" + sentenceId_2);
     }
@@ -0,0 +1,274 @@
+package similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimate of a similarity calculation from a random sample of pairs, see {@link similarity.SimilarityMatrix#estimateSimilarity(int, int)}.
+ * <p>
+ * Every pair of the sample is above the threshold with the same probability, so the expected number of
+ * similarities and every bucket of the distribution are binomial proportions. Their 95% confidence intervals
+ * are Wilson score intervals, which stay sensible for the tiny proportions of a high threshold.
+ * The runtime is the median scoring time per pair of the timed batches, which ignores batches slowed down by
+ * the garbage collector or the compiler. Its interval is the distribution free interval of the median
+ * from the order statistics of the batches.
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityEstimate {
+
+    /**
+     * Quantile of the normal distribution for 95% confidence
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * Bytes of one entry in {@link similarity.SimilarityResults} and in a spill file
+     */
+    private static final long ENTRY_SIZE = 12;
+
+    /**
+     * Number of all pairs
+     */
+    private final long pairs;
+
+    /**
+     * Similarity threshold
+     */
+    private final double threshold;
+
+    /**
+     * Number of threads of the estimated calculation
+     */
+    private final int threads;
+
+    /**
+     * Sampled pairs of every bucket of the distribution, pairs not above the threshold are in bucket 0
+     */
+    private final long[] counts;
+
+    /**
+     * Number of sampled pairs
+     */
+    private long samples = 0;
+
+    /**
+     * Sampled pairs above the threshold
+     */
+    private long above = 0;
+
+    /**
+     * Scoring time per pair of every timed batch in nanoseconds
+     */
+    private final double[] batchTimes;
+
+    /**
+     * Number of timed batches
+     */
+    private int batches = 0;
+
+    /**
+     * @param pairs Number of all pairs
+     * @param threshold Similarity threshold
+     * @param granularity Number of data points of the distribution
+     * @param threads Number of threads of the estimated calculation
+     * @param batches Maximum number of timed batches
+     */
+    SimilarityEstimate(long pairs, double threshold, int granularity, int threads, int batches) {
+        this.pairs = pairs;
+        this.threshold = threshold;
+        this.threads = Math.max(1, threads);
+        this.counts = new long[granularity];
+        this.batchTimes = new double[Math.max(0, batches)];
+    }
+
+    /**
+     * Adds a sampled pair like {@link similarity.SimilarityMatrix#similarityDistribution(int)} counts it
+     *
+     * @param similarity Similarity of the pair
+     */
+    void add(float similarity) {
+        samples++;
+        if (similarity > threshold) {
+            above++;
+            int position = (int) (similarity * counts.length);
+            position = (position == counts.length) ? (position - 1) : position;
+            counts[position]++;
+        } else {
+            counts[0]++;
+        }
+    }
+
+    /**
+     * Adds the scoring time of a batch
+     *
+     * @param count Number of pairs in the batch
+     * @param nanos Scoring time of the batch
+     */
+    void addBatch(int count, long nanos) {
+        if (count > 0 && batches < batchTimes.length) {
+            batchTimes[batches++] = (double) nanos / count;
+        }
+    }
+
+    /**
+     * Wilson score interval of a binomial proportion
+     *
+     * @param k Number of hits
+     * @param n Number of trials
+     * @return Lower and upper bound of the proportion
+     */
+    private static double[] wilson(long k, long n) {
+        if (n == 0) {
+            return new double[]{0.0, 1.0};
+        }
+        double p = (double) k / n;
+        double z2 = Z * Z;
+        double denominator = 1 + z2 / n;
+        double center = (p + z2 / (2.0 * n)) / denominator;
+        double half = Z * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n)) / denominator;
+        return new double[]{Math.max(0.0, center - half), Math.min(1.0, center + half)};
+    }
+
+    /**
+     * @return Number of sampled pairs
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return Number of all pairs
+     */
+    public long getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @return Expected number of similarities above the threshold
+     */
+    public double getExpectedCount() {
+        return (samples > 0) ? (double) above / samples * pairs : 0.0;
+    }
+
+    /**
+     * @return Lower and upper bound of the number of similarities above the threshold
+     */
+    public double[] getCountInterval() {
+        double[] interval = wilson(above, samples);
+        return new double[]{interval[0] * pairs, interval[1] * pairs};
+    }
+
+    /**
+     * @return Expected bytes of all similarities in memory or in a spill file
+     */
+    public double getExpectedBytes() {
+        return getExpectedCount() * ENTRY_SIZE;
+    }
+
+    /**
+     * @return Lower and upper bound of the bytes of all similarities
+     */
+    public double[] getBytesInterval() {
+        double[] interval = getCountInterval();
+        return new double[]{interval[0] * ENTRY_SIZE, interval[1] * ENTRY_SIZE};
+    }
+
+    /**
+     * @return Expected runtime of comparing all pairs in milliseconds
+     */
+    public double getExpectedRuntime() {
+        if (batches == 0) {
+            return 0.0;
+        }
+        double[] sorted = Arrays.copyOf(batchTimes, batches);
+        Arrays.sort(sorted);
+        double median = (batches % 2 == 1) ? sorted[batches / 2] : 0.5 * (sorted[batches / 2 - 1] + sorted[batches / 2]);
+        return toMillis(median);
+    }
+
+    /**
+     * @return Lower and upper bound of the runtime in milliseconds
+     */
+    public double[] getRuntimeInterval() {
+        if (batches == 0) {
+            return new double[]{0.0, Double.POSITIVE_INFINITY};
+        }
+        double[] sorted = Arrays.copyOf(batchTimes, batches);
+        Arrays.sort(sorted);
+        // ranks of the median interval from the binomial distribution of the batches below the median
+        double half = Z * Math.sqrt(batches) / 2;
+        int low = Math.max(0, (int) Math.floor(batches / 2.0 - half) - 1);
+        int high = Math.min(batches - 1, (int) Math.ceil(batches / 2.0 + half));
+        return new double[]{toMillis(sorted[low]), toMillis(sorted[high])};
+    }
+
+    /**
+     * @return Runtime of all pairs in milliseconds for the given scoring time per pair
+     */
+    private double toMillis(double nanosPerPair) {
+        return nanosPerPair * pairs / threads / 1e6;
+    }
+
+    /**
+     * @return Estimated normalized frequencies like {@link similarity.SimilarityMatrix#similarityDistribution(int)}
+     */
+    public List<Double> getDistribution() {
+        ArrayList<Double> dist = new ArrayList<Double>(counts.length);
+        for (long count : counts) {
+            dist.add((samples > 0) ? count / (double) samples : 0.0);
+        }
+        return dist;
+    }
+
+    /**
+     * @param position Data point of the distribution
+     * @return Lower and upper bound of the normalized frequency
+     */
+    public double[] getDistributionInterval(int position) {
+        return wilson(counts[position], samples);
+    }
+
+    /**
+     * Prints the estimate with its confidence intervals in a human readable format
+     *
+     * @return Estimate as String
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Estimate from ").append(samples).append(" of ").append(pairs).append(" pairs, 95% confidence intervals\n");
+        double[] count = getCountInterval();
+        sb.append("Similarities above ").append(threshold).append(": ").append(Math.round(getExpectedCount()))
+                .append(" (").append(Math.round(count[0])).append(" - ").append(Math.round(count[1])).append(")\n");
+        double[] bytes = getBytesInterval();
+        sb.append("Memory of the similarities: ").append(megabytes(getExpectedBytes()))
+                .append(" (").append(megabytes(bytes[0])).append(" - ").append(megabytes(bytes[1])).append(")\n");
+        double[] runtime = getRuntimeInterval();
+        sb.append("Runtime of mode bruteforce with ").append(threads).append(" thread(s): ").append(seconds(getExpectedRuntime()))
+                .append(" (").append(seconds(runtime[0])).append(" - ").append(seconds(runtime[1])).append(")\n");
+        sb.append("Distribution:\n");
+        List<Double> dist = getDistribution();
+        for (int position = 0; position < counts.length; position++) {
+            double[] interval = getDistributionInterval(position);
+            sb.append(String.format("%.2f: %.6f (%.6f - %.6f)%n", (double) position / counts.length,
+                    dist.get(position), interval[0], interval[1]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Bytes as MB with one decimal
+     */
+    private static String megabytes(double bytes) {
+        return String.format("%.1f MB", bytes / (1024 * 1024));
+    }
+
+    /**
+     * @return Milliseconds as seconds with one decimal
+     */
+    private static String seconds(double millis) {
+        return String.format("%.1f s", millis / 1000);
+    }
+}
@@ -0,0 +1,143 @@
+package similarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Spills all entries into a binary file.
+ * Every entry takes 12 bytes: both sentence IDs as int followed by the similarity as float.
+ * The file can be read back into another {@link similarity.SimilaritySink} by {@link #read(java.io.File, SimilaritySink)}.
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityFileSink implements SimilaritySink {
+
+    /**
+     * Size of the write buffer in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Size of one entry in bytes
+     */
+    private static final long ENTRY_SIZE = 12;
+
+    /**
+     * Stream to the spill file
+     */
+    private final DataOutputStream out;
+
+    /**
+     * Underlying file stream, used to sync the file on {@link #flush()}
+     */
+    private final FileOutputStream file;
+
+    /**
+     * Counts the written entries
+     */
+    private long count = 0;
+
+    /**
+     * Creates or truncates the given file
+     *
+     * @param file File which receives the entries
+     * @throws IOException Thrown, if the file could not be created
+     */
+    public SimilarityFileSink(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Opens the given file
+     *
+     * @param file File which receives the entries
+     * @param append Whether the entries should be appended to an existing file
+     * @throws IOException Thrown, if the file could not be opened
+     */
+    public SimilarityFileSink(File file, boolean append) throws IOException {
+        this.file = new FileOutputStream(file, append);
+        this.out = new DataOutputStream(new BufferedOutputStream(this.file, BUFFER_SIZE));
+    }
+
+    /**
+     * Cuts a spill file down to its first entries, so a resumed calculation can append behind them
+     *
+     * @param file File written by a {@link similarity.SimilarityFileSink}
+     * @param entries Number of entries to be kept
+     * @throws IOException Thrown, if the file is shorter or could not be truncated
+     */
+    public static void truncate(File file, long entries) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < ENTRY_SIZE * entries) {
+                throw new IOException("Spill file " + file + " contains less than " + entries + " entries");
+            }
+            raf.setLength(ENTRY_SIZE * entries);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public void add(int sentenceId1, int sentenceId2, float similarity) throws IOException {
+        out.writeInt(sentenceId1);
+        out.writeInt(sentenceId2);
+        out.writeFloat(similarity);
+        count++;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        file.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * @return Number of entries written by this sink
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Reads all entries of a spill file into the given sink.
+     * The given sink is not closed.
+     *
+     * @param file File written by a {@link similarity.SimilarityFileSink}
+     * @param sink Receives all entries
+     * @return Number of entries read
+     * @throws IOException Thrown, if the file could not be read or the sink failed
+     */
+    public static long read(File file, SimilaritySink sink) throws IOException {
+        long count = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            while (true) {
+                int sentenceId1;
+                try {
+                    sentenceId1 = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                sink.add(sentenceId1, in.readInt(), in.readFloat());
+                count++;
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+}
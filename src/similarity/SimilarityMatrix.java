@@ -1,12 +1,21 @@
 package similarity;
 
+import metrics.Metrics;
+import model.CompactSentenceList;
 import model.Options;
 import model.Sentence;
 import model.SentenceList;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
@@ -23,6 +32,31 @@ public class SimilarityMatrix {
 	 */
 	private static final Logger log = Logger.getLogger(SimilarityMatrix.class.getName());
 
+    /**
+     * Seed of the MinHash functions and the recall sample, fixed so runs can be repeated
+     */
+    private static final long LSH_SEED = 20150101L;
+
+    /**
+     * Seed of the sampled pairs of {@link #estimateSimilarity(int, int)}, fixed for reproducible estimates
+     */
+    private static final long ESTIMATE_SEED = 20150102L;
+
+    /**
+     * Number of timed batches of {@link #estimateSimilarity(int, int)}
+     */
+    private static final int ESTIMATE_BATCHES = 100;
+
+    /**
+     * Milliseconds of scoring before the timing of {@link #estimateSimilarity(int, int)} starts
+     */
+    private static final long ESTIMATE_WARMUP_MILLIS = 1000;
+
+    /**
+     * Receives the progress of the calculation
+     */
+    private static final Metrics metrics = Metrics.getInstance();
+
     /**
      * Contains options for the calculation
      */
@@ -46,12 +80,70 @@ public class SimilarityMatrix {
     /**
      * Contains the resulting similarity matrix
      */
-    private List<SimilarityEntry> matrix;
+    private SimilarityResults matrix;
+
+    /**
+     * Counters and histogram of all pairs, entries and pairs below the threshold
+     */
+    private SimilarityStatistics statistics = new SimilarityStatistics();
+
+    /**
+     * Threshold of the current calculation
+     */
+    private double threshold;
 
     /**
-     * Counts similarities with values below threshold
+     * Sentences of {@link #sentenceList} encoded as word IDs
      */
-    private int zeroSimilarityCount = 0;
+    private EncodedSentenceList encoded;
+
+    /**
+     * Whether pairs are scored by {@link #calculateSimilarity(model.Sentence, model.Sentence)}
+     * instead of {@link similarity.EncodedSentenceList#similarity(int, int)}
+     */
+    private boolean stringKernel = false;
+
+    /**
+     * Sentences of {@link #encoded} as bitsets, null if pairs are not scored by
+     * {@link similarity.BitsetSentenceList#similarity(int, int)}
+     */
+    private BitsetSentenceList bitsets = null;
+
+    /**
+     * Whether pairs are scored by {@link similarity.EncodedSentenceList#similarity(int, int, double)},
+     * which abandons pairs below the threshold
+     */
+    private boolean earlyExit = false;
+
+    /**
+     * Receives all entries above the threshold
+     */
+    private SimilaritySink sink;
+
+    /**
+     * Counts similarities with values above threshold
+     */
+    private long similarityCount = 0;
+
+    /**
+     * Highest sentence ID of the last run, pairs of two sentences up to this ID are skipped
+     */
+    private long watermark = -1;
+
+    /**
+     * Order independent hash of the rare words, 0 if all words are used
+     */
+    private long rareWordHash = 0;
+
+    /**
+     * Progress of the calculation, null if no checkpoints should be written
+     */
+    private SimilarityCheckpoint checkpoint = null;
+
+    /**
+     * Whether the sentences are the representatives of a collapsed matrix, which must not be collapsed again
+     */
+    private boolean representatives = false;
 
 
     /**
@@ -64,7 +156,7 @@ public class SimilarityMatrix {
         this.opt = opt;
         this.sentenceList = slist;
         size = slist.size();
-        matrix = new ArrayList<SimilarityEntry>(size);
+        matrix = new SimilarityResults(size);
     }
 
     /**
@@ -90,14 +182,211 @@ public class SimilarityMatrix {
             }
         }
         this.size = this.sentenceList.size();
-        matrix = new ArrayList<SimilarityEntry>(size);
+        matrix = new SimilarityResults(size);
+        for (String word : rareWords.keySet()) {
+            rareWordHash += word.hashCode();
+        }
+        rareWordHash = 31 * rareWordHash + rareWords.size();
+    }
+
+    /**
+     * Instantiate a new similarities matrix with the sentences of a {@link model.CompactSentenceList}
+     * and a set of rare words like {@link #SimilarityMatrix(SentenceList, HashMap, Options)}.
+     * Every word of the vocabulary is looked up in the rare words only once.
+     *
+     * @param corpus Contains all sentences
+     * @param rareWords contains words that will be considered when comparing sentences
+     * @param opt Options, which should be applied
+     */
+    public SimilarityMatrix(CompactSentenceList corpus, HashMap<String,Double> rareWords, Options opt) {
+        this.opt = opt;
+        boolean[] rare = new boolean[corpus.vocabularySize()];
+        for (int id = 0; id < rare.length; id++) {
+            rare[id] = rareWords.containsKey(corpus.getWord(id));
+        }
+        this.sentenceList = new SentenceList(corpus.size());
+        for (int i = 0; i < corpus.size(); i++) {
+            int length = corpus.length(i);
+            ArrayList<String> goodWords = new ArrayList<String>(length);
+            for (int k = 0; k < length; k++) {
+                int id = corpus.getWordId(i, k);
+                if (rare[id]) {
+                    goodWords.add(corpus.getWord(id));
+                }
+            }
+            if(goodWords.size() >= opt.getMinimumMatchLength()) {
+                this.sentenceList.add(new Sentence(corpus.getId(i), corpus.getInitiallength(i), goodWords));
+            }
+        }
+        this.size = this.sentenceList.size();
+        matrix = new SimilarityResults(size);
+        for (String word : rareWords.keySet()) {
+            rareWordHash += word.hashCode();
+        }
+        rareWordHash = 31 * rareWordHash + rareWords.size();
     }
 
     /**
      * Computes all similarities from the given {@link #sentenceList}
      * Must not be called more than once.
+     * <p>
+     * With similarityMode "index" only pairs sharing at least one word are scored,
+     * all other pairs have a similarity of zero. With similarityMode "join" only pairs surviving the
+     * filters of a {@link similarity.PrefixFilterJoin} are scored.
+     * The result is the same as in mode "bruteforce".
+     * With similarityMode "window" only pairs inside the windows of a {@link similarity.LengthWindowBlocking}
+     * are scored, the result is the same as in mode "bruteforce".
+     * With similarityMode "lsh" only pairs colliding in a {@link similarity.MinHashLsh} are scored,
+     * the result is a subset of mode "bruteforce".
+     * With similarityDedup identical sentences are compared only once, see {@link similarity.DuplicateGroups}.
+     * With a similarityTopK above 0 only the most similar sentences of every sentence are kept.
+     * After {@link #setWatermark(long)} only pairs with at least one new sentence are computed.
+     * With a similarityParallelism other than 1 the pairs are computed on a {@link java.util.concurrent.ForkJoinPool},
+     * the result is the same as in the sequential computation.
+     * After {@link #setCheckpoint(SimilarityCheckpoint)} the rows are computed the same way and the progress is saved
+     * periodically.
+     * With a similarityShard of 0 or above only the rows of this shard are computed, see {@link #shardStart(int, int, int)}.
      */
     public void calculateSimilarity() {
+        try {
+            calculateSimilarity(matrix);
+        } catch (IOException e) {
+            // the in-memory sink does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes all similarities from the given {@link #sentenceList} like {@link #calculateSimilarity()},
+     * but passes every entry to the given sink instead of collecting it in memory.
+     * The sink is closed at the end.
+     * {@link #getSimilarityMatrix()} and {@link #toString()} contain only the entries collected by the
+     * {@link similarity.SimilarityResults} of this matrix, {@link #similarityDistribution(int)} and
+     * {@link #getStatistics()} count every pair.
+     * The modes join, window and lsh, similarityTopK, similarityDedup and the incremental mode collect all entries
+     * before passing them on, {@link model.Options} allows them only with similaritySink memory.
+     * Must not be called more than once.
+     *
+     * @param sink Receives all entries above the threshold
+     * @throws IOException Thrown, if the sink failed
+     */
+    public void calculateSimilarity(SimilaritySink sink) throws IOException {
+        this.sink = sink;
+        prepare();
+        boolean indexed = opt.isIndexMode() && threshold >= 0;
+        if (watermark >= 0) {
+            calculateIncrementalSimilarity();
+        } else if (opt.getSimilarityShard() >= 0) {
+            // the join needs all rows, a shard is indexed instead
+            calculateParallelSimilarity(indexed || (opt.isJoinMode() && threshold >= 0));
+        } else if (opt.getSimilarityTopK() > 0 && threshold >= 0) {
+            calculateTopKSimilarity();
+        } else if (opt.isSimilarityDedup() && !representatives && checkpoint == null) {
+            calculateCollapsedSimilarity();
+        } else if (opt.isJoinMode() && threshold >= 0) {
+            calculateJoinSimilarity();
+        } else if (opt.isLshMode() && threshold >= 0) {
+            calculateLshSimilarity();
+        } else if (opt.isWindowMode() && threshold >= 0) {
+            calculateWindowSimilarity();
+        } else if (opt.getSimilarityParallelism() != 1 || checkpoint != null) {
+            calculateParallelSimilarity(indexed);
+        } else if (indexed) {
+            calculateIndexedSimilarity();
+        } else {
+            calculateBruteForceSimilarity();
+        }
+        sink.close();
+        this.calculationFinished = true;
+    }
+
+    /**
+     * Encodes the sentences and selects the kernel for {@link #score(int, int)}
+     */
+    private void prepare() {
+        this.threshold = opt.getSimilarityThreshold();
+        this.encoded = new EncodedSentenceList(sentenceList, new WordDictionary(),
+                SimilarityMeasures.forName(opt.getSimilarityMeasure()));
+        this.stringKernel = opt.isStringKernel();
+        if (opt.isBitsetKernel()) {
+            this.bitsets = new BitsetSentenceList(encoded);
+        }
+        this.earlyExit = opt.isEarlyExitKernel();
+    }
+
+    /**
+     * Estimates the result of {@link #calculateSimilarity()} in mode bruteforce from a random sample of pairs,
+     * without computing or storing any entry. Pairs are drawn uniformly with replacement.
+     * The scoring time is measured after a warm up on runs of consecutive pairs of random rows,
+     * which give the spread of the runtime.
+     * Must not be called together with {@link #calculateSimilarity()}.
+     *
+     * @param samples Number of sampled pairs
+     * @param granularity Number of data points of the estimated {@link #similarityDistribution(int)}
+     * @return Estimate with confidence intervals
+     */
+    public SimilarityEstimate estimateSimilarity(int samples, int granularity) {
+        prepare();
+        int threads = (opt.getSimilarityParallelism() == 0) ? Runtime.getRuntime().availableProcessors() : opt.getSimilarityParallelism();
+        long pairs = ((long) size * ((long) size - 1)) / 2;
+        int batches = Math.min(ESTIMATE_BATCHES, samples);
+        SimilarityEstimate estimate = new SimilarityEstimate(pairs, threshold, granularity, threads, batches);
+        if (size < 2 || samples <= 0) {
+            return estimate;
+        }
+
+        // independent pairs for the counts
+        Random random = new Random(ESTIMATE_SEED);
+        for (int k = 0; k < samples; k++) {
+            int i = random.nextInt(size);
+            int j = random.nextInt(size - 1);
+            j = (j >= i) ? j + 1 : j;
+            estimate.add(samplePair(Math.min(i, j), Math.max(i, j)));
+        }
+
+        // warm up the kernel until it is compiled
+        float total = 0.0f;
+        long warmupEnd = System.nanoTime() + ESTIMATE_WARMUP_MILLIS * 1000000L;
+        while (System.nanoTime() < warmupEnd) {
+            int i = random.nextInt(size - 1);
+            for (int j = i + 1; j < size && j <= i + 1000; j++) {
+                total += samplePair(i, j);
+            }
+        }
+
+        // runs of consecutive pairs of a random row are timed, like the rows of mode bruteforce
+        int run = Math.max(1, samples / batches);
+        for (int batch = 0; batch < batches; batch++) {
+            int i = random.nextInt(size - 1);
+            int to = (int) Math.min(size, (long) i + 1 + run);
+            long start = System.nanoTime();
+            for (int j = i + 1; j < to; j++) {
+                total += samplePair(i, j);
+            }
+            estimate.addBatch(to - i - 1, System.nanoTime() - start);
+        }
+        // the sum keeps the timed scores alive
+        log.fine("Sum of the timed similarities " + total);
+        log.info("Similarity estimate from " + samples + " of " + pairs + " pairs: "
+                + (long) estimate.getExpectedCount() + " similarities expected");
+        return estimate;
+    }
+
+    /**
+     * @return Similarity of the pair like in {@link #calculateBruteForceSimilarity()}
+     */
+    private float samplePair(int i, int j) {
+        if (sentenceList.get(i).size() > 0 && sentenceList.get(j).size() > 0) {
+            return score(i, j);
+        }
+        return 0.0f;
+    }
+
+    /**
+     * Compares every sentence with every other sentence.
+     * Kept as reference for all other modes.
+     */
+    private void calculateBruteForceSimilarity() throws IOException {
         double threshold = this.opt.getSimilarityThreshold();
 
         final double percent = 0.05;
@@ -109,9 +398,11 @@ public class SimilarityMatrix {
             calculatedstep = 1;
         }
         System.out.println("Calculate " + ((long) this.size * (((long) this.size )-1))/2 + " similarities between " + this.size + " Sentences");
+        startProgress(((long) this.size * (((long) this.size )-1))/2, 0);
 
         System.out.println("\n");
         for (int i = 0; i < size; ++i) {
+            long scored = 0;
             for (int j = i+1; j < size; ++j) {
                 float similarity = 0.0f;
                 stepcount++;
@@ -122,16 +413,556 @@ public class SimilarityMatrix {
                 }
 
                 if( sentenceList.get(i).size() > 0 && sentenceList.get(j).size() > 0 ) {
-                    similarity = calculateSimilarity(sentenceList.get(i), sentenceList.get(j));
+                    similarity = score(i, j);
+                    scored++;
                 }
                 if(similarity > threshold){
-                    matrix.add(new SimilarityEntry(sentenceList.get(i).getId(), sentenceList.get(j).getId(), similarity));
+                    emit(sentenceList.get(i).getId(), sentenceList.get(j).getId(), similarity);
                 } else {
-                    zeroSimilarityCount += 1;
+                    statistics.reject();
                 }
             }
+            metrics.progress(size - 1 - i, scored, similarityCount);
         }
-        this.calculationFinished = true;
+    }
+
+    /**
+     * Scores only candidate pairs from an {@link similarity.InvertedIndex}.
+     * Pairs without a common word are counted as rejected in the {@link #statistics} without scoring them.
+     * Entries are added in the same order as in {@link #calculateBruteForceSimilarity()}.
+     */
+    private void calculateIndexedSimilarity() throws IOException {
+        final double percent = 0.05;
+
+        long pairs = ((long) this.size * (((long) this.size )-1))/2;
+        long calculatedstep = (long) (pairs * percent);
+        if (calculatedstep < 1) {
+            calculatedstep = 1;
+        }
+        System.out.println("Calculate " + pairs + " similarities between " + this.size + " Sentences");
+        startProgress(pairs, 0);
+
+        InvertedIndex index = new InvertedIndex(encoded);
+        System.out.println("Indexed " + index.size() + " words");
+        System.out.println("\n");
+
+        SimilarityTile tile = new SimilarityTile(this, index, 0, size, new SimilarityResults());
+        tile.allocate(size);
+        long stepcount = 0;
+        int outputpercent = 0;
+
+        for (int i = 0; i < size; ++i) {
+            long scored = tile.scored;
+            scoreRow(i, tile);
+            emitScored(tile.entries);
+            tile.entries.clear();
+            metrics.progress(size - 1 - i, tile.scored - scored, similarityCount);
+
+            stepcount += size - 1 - i;
+            while (stepcount >= calculatedstep && outputpercent < 100) {
+                System.out.println(outputpercent + "% calculated");
+                outputpercent += (int)(percent*100);
+                stepcount -= calculatedstep;
+            }
+        }
+        statistics.merge(tile.statistics);
+        System.out.println(tile.scored + " of " + pairs + " pairs scored");
+        log.info("Index mode scored " + tile.scored + " of " + pairs + " pairs");
+    }
+
+    /**
+     * Scores only the candidates of a {@link similarity.PrefixFilterJoin}.
+     * All other pairs are counted as rejected in the {@link #statistics} without scoring them.
+     */
+    private void calculateJoinSimilarity() throws IOException {
+        long pairs = ((long) this.size * (((long) this.size )-1))/2;
+        System.out.println("Calculate " + pairs + " similarities between " + this.size + " Sentences");
+
+        startProgress(pairs, 0);
+
+        PrefixFilterJoin join = new PrefixFilterJoin(encoded, threshold);
+        SimilarityResults entries = join.join();
+        emitAll(entries);
+        statistics.reject(pairs - entries.size());
+        metrics.progress(pairs, join.getVerified(), similarityCount);
+    }
+
+    /**
+     * Compares only sentences with an ID above {@link #watermark} with all other sentences.
+     * Entries are passed in the order of the brute force loop, pairs of two old sentences are skipped
+     * and not counted as rejected in the {@link #statistics}.
+     */
+    private void calculateIncrementalSimilarity() throws IOException {
+        int fresh = 0;
+        for (int i = 0; i < size; i++) {
+            if (encoded.id(i) > watermark) {
+                fresh++;
+            }
+        }
+        long pairs = (long) fresh * (size - fresh) + ((long) fresh * (fresh - 1)) / 2;
+        System.out.println("Calculate " + pairs + " similarities of " + fresh + " new Sentences with " + this.size + " Sentences");
+        startProgress(pairs, 0);
+
+        InvertedIndex index = (threshold >= 0) ? new InvertedIndex(encoded) : null;
+        int[] stamp = new int[size];
+        Arrays.fill(stamp, -1);
+        int[] partners = new int[size];
+
+        // positions instead of sentence IDs, so the result can be sorted like the brute force loop
+        SimilarityResults found = new SimilarityResults();
+        int seen = 0;
+        for (int i = 0; i < size; i++) {
+            if (encoded.id(i) <= watermark) {
+                continue;
+            }
+            long scored = 0;
+            int count;
+            if (index != null) {
+                count = index.partners(i, stamp, partners);
+            } else {
+                count = 0;
+                for (int j = 0; j < size; j++) {
+                    if (j != i) {
+                        partners[count++] = j;
+                    }
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int j = partners[k];
+                // pairs of two new sentences are computed once from the smaller position
+                if (encoded.id(j) > watermark && j < i) {
+                    continue;
+                }
+                int first = Math.min(i, j);
+                int second = Math.max(i, j);
+                float similarity = 0.0f;
+                if (sentenceList.get(first).size() > 0 && sentenceList.get(second).size() > 0) {
+                    similarity = score(first, second);
+                    scored++;
+                }
+                if (similarity > threshold) {
+                    found.add(first, second, similarity);
+                }
+            }
+            // pairs with all old sentences and with the new sentences behind this one
+            seen++;
+            metrics.progress((size - fresh) + (fresh - seen), scored, found.size());
+        }
+        found.sortByKey();
+        for (int row = 0; row < found.size(); row++) {
+            emit(encoded.id(found.getSentenceId1(row)), encoded.id(found.getSentenceId2(row)), found.getSimilarity(row));
+        }
+        statistics.reject(pairs - found.size());
+        log.info("Incremental mode compared " + fresh + " new sentences above s_id " + watermark);
+    }
+
+    /**
+     * Scores only the pairs inside the windows of a {@link similarity.LengthWindowBlocking}
+     */
+    private void calculateWindowSimilarity() throws IOException {
+        long pairs = ((long) this.size * (((long) this.size )-1))/2;
+        System.out.println("Calculate " + pairs + " similarities between " + this.size + " Sentences");
+
+        startProgress(pairs, 0);
+
+        LengthWindowBlocking window = new LengthWindowBlocking(encoded, threshold);
+        SimilarityResults entries = window.join();
+        emitAll(entries);
+        statistics.reject(pairs - entries.size());
+        metrics.progress(pairs, window.getScored(), similarityCount);
+    }
+
+    /**
+     * Scores only the candidates of a {@link similarity.MinHashLsh}.
+     * The result is approximate, its recall is measured on a sample of similarityLshRecallSample sentences.
+     */
+    private void calculateLshSimilarity() throws IOException {
+        long pairs = ((long) this.size * (((long) this.size )-1))/2;
+        System.out.println("Calculate similarities between " + this.size + " Sentences by MinHash LSH with "
+                + opt.getSimilarityLshBands() + " bands of " + opt.getSimilarityLshRows() + " rows");
+
+        startProgress(pairs, 0);
+
+        MinHashLsh lsh = new MinHashLsh(encoded, opt.getSimilarityLshBands(), opt.getSimilarityLshRows(), LSH_SEED);
+        SimilarityResults entries = lsh.join(threshold);
+        emitAll(entries);
+        statistics.reject(pairs - entries.size());
+        metrics.progress(pairs, lsh.getCandidates(), similarityCount);
+        System.out.println("MinHash LSH scored " + lsh.getCandidates() + " of " + pairs + " pairs");
+        log.info("MinHash LSH: " + pairs + " pairs, " + lsh.getCandidates() + " candidates, " + entries.size() + " found");
+
+        if (opt.getSimilarityLshRecallSample() > 0) {
+            double recall = lsh.recall(threshold, opt.getSimilarityLshRecallSample(), LSH_SEED);
+            System.out.println("Recall on " + Math.min(size, opt.getSimilarityLshRecallSample()) + " sampled sentences: "
+                    + String.format("%.4f", recall) + " (" + lsh.getSampledHits() + " of " + lsh.getSampledPairs() + " pairs)");
+            log.info("MinHash LSH recall " + recall + ", " + lsh.getSampledHits() + " of " + lsh.getSampledPairs() + " sampled pairs found");
+        }
+    }
+
+    /**
+     * Compares only the representatives of the {@link similarity.DuplicateGroups} in the configured mode
+     * and expands their entries to all members. Pairs inside a group get the similarity of the representative
+     * to itself without being scored.
+     */
+    private void calculateCollapsedSimilarity() throws IOException {
+        long pairs = ((long) this.size * (((long) this.size )-1))/2;
+        DuplicateGroups groups = new DuplicateGroups(encoded);
+        final int count = groups.size();
+        long collapsedPairs = ((long) count * ((long) count - 1)) / 2;
+        System.out.println("Collapsed " + this.size + " Sentences into " + count + " groups of identical Sentences, n shrank by "
+                + (size > 0 ? (100 * (size - count) / size) : 0) + "%");
+        log.info("Duplicate groups: " + size + " sentences, " + count + " groups, " + pairs + " pairs reduced to " + collapsedPairs);
+        // the representatives report their pairs to the same progress
+        startProgress(pairs, 0);
+
+        SentenceList representativeList = new SentenceList(count);
+        HashMap<Integer, Integer> groupOf = new HashMap<Integer, Integer>(2 * count);
+        for (int g = 0; g < count; g++) {
+            Sentence sentence = sentenceList.get(groups.representative(g));
+            representativeList.add(sentence);
+            groupOf.put(sentence.getId(), g);
+        }
+        SimilarityMatrix collapsed = new SimilarityMatrix(representativeList, opt);
+        collapsed.representatives = true;
+        collapsed.calculateSimilarity();
+        SimilarityResults entries = collapsed.getSimilarityMatrix();
+
+        // partner groups of every group
+        int[] adjacencyStart = new int[count + 1];
+        for (int row = 0; row < entries.size(); row++) {
+            adjacencyStart[groupOf.get(entries.getSentenceId1(row)) + 1]++;
+            adjacencyStart[groupOf.get(entries.getSentenceId2(row)) + 1]++;
+        }
+        for (int g = 0; g < count; g++) {
+            adjacencyStart[g + 1] += adjacencyStart[g];
+        }
+        int[] adjacentGroups = new int[adjacencyStart[count]];
+        float[] adjacentSimilarities = new float[adjacencyStart[count]];
+        int[] fill = Arrays.copyOf(adjacencyStart, count);
+        for (int row = 0; row < entries.size(); row++) {
+            int g1 = groupOf.get(entries.getSentenceId1(row));
+            int g2 = groupOf.get(entries.getSentenceId2(row));
+            adjacentGroups[fill[g1]] = g2;
+            adjacentSimilarities[fill[g1]++] = entries.getSimilarity(row);
+            adjacentGroups[fill[g2]] = g1;
+            adjacentSimilarities[fill[g2]++] = entries.getSimilarity(row);
+        }
+
+        // similarity of the members of a group to each other
+        float[] identical = new float[count];
+        for (int g = 0; g < count; g++) {
+            int r = groups.representative(g);
+            identical[g] = (sentenceList.get(r).size() > 0) ? score(r, r) : 0.0f;
+        }
+
+        // expand row by row to keep the order of the brute force loop
+        long[] row = new long[size];
+        long emitted = 0;
+        for (int i = 0; i < size; i++) {
+            int g = groups.group(i);
+            int n = 0;
+            if (identical[g] > threshold) {
+                n = collectMembers(groups, g, i, identical[g], row, n);
+            }
+            for (int a = adjacencyStart[g]; a < adjacencyStart[g + 1]; a++) {
+                n = collectMembers(groups, adjacentGroups[a], i, adjacentSimilarities[a], row, n);
+            }
+            Arrays.sort(row, 0, n);
+            for (int k = 0; k < n; k++) {
+                emit(encoded.id(i), encoded.id((int) (row[k] >>> 32)), Float.intBitsToFloat((int) row[k]));
+            }
+            emitted += n;
+        }
+        statistics.reject(pairs - emitted);
+        metrics.progress(pairs - collapsedPairs, 0, similarityCount);
+    }
+
+    /**
+     * Adds all members of a group behind position i to a row of packed positions and similarities
+     *
+     * @return New number of entries in the row
+     */
+    private static int collectMembers(DuplicateGroups groups, int group, int i, float similarity, long[] row, int n) {
+        int[] members = groups.members();
+        int start = Arrays.binarySearch(members, groups.memberStart(group), groups.memberEnd(group), i + 1);
+        start = (start < 0) ? -start - 1 : start;
+        long bits = Float.floatToRawIntBits(similarity) & 0xFFFFFFFFL;
+        for (int k = start; k < groups.memberEnd(group); k++) {
+            row[n++] = ((long) members[k] << 32) | bits;
+        }
+        return n;
+    }
+
+    /**
+     * Keeps only the similarityTopK most similar sentences of every sentence, see {@link similarity.TopKSimilarity}.
+     * All other pairs are counted as rejected in the {@link #statistics}.
+     */
+    private void calculateTopKSimilarity() throws IOException {
+        long pairs = ((long) this.size * (((long) this.size )-1))/2;
+        System.out.println("Calculate the " + opt.getSimilarityTopK() + " most similar sentences for each of " + this.size + " Sentences");
+
+        startProgress(pairs, 0);
+
+        TopKSimilarity topK = new TopKSimilarity(encoded, threshold, opt.getSimilarityTopK());
+        SimilarityResults entries = topK.calculate();
+        emitAll(entries);
+        statistics.reject(pairs - entries.size());
+        metrics.progress(pairs, topK.getScored(), similarityCount);
+    }
+
+    /**
+     * Splits the pairs into {@link similarity.SimilarityTile}s with nearly the same amount of pairs
+     * and computes them on a {@link java.util.concurrent.ForkJoinPool}.
+     * Tiles are computed in waves and merged in row order, which keeps the result deterministic.
+     *
+     * @param indexed Whether candidates should be generated by an {@link similarity.InvertedIndex}
+     */
+    private void calculateParallelSimilarity(boolean indexed) throws IOException {
+        int parallelism = opt.getSimilarityParallelism();
+        if (parallelism < 1) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+
+        int first = 0;
+        int end = size;
+        if (opt.getSimilarityShard() >= 0) {
+            first = shardStart(size, opt.getSimilarityShard(), opt.getSimilarityShards());
+            end = shardStart(size, opt.getSimilarityShard() + 1, opt.getSimilarityShards());
+            System.out.println("Shard " + opt.getSimilarityShard() + " of " + opt.getSimilarityShards()
+                    + " covers sentences " + first + " to " + end);
+        }
+        long pairs = pairs(size, first, end);
+        System.out.println("Calculate " + pairs + " similarities between " + this.size + " Sentences on " + parallelism + " threads");
+
+        InvertedIndex index = null;
+        if (indexed) {
+            index = new InvertedIndex(encoded);
+            System.out.println("Indexed " + index.size() + " words");
+        }
+        System.out.println("\n");
+
+        long done = 0;
+        if (checkpoint != null && checkpoint.getRow() > first) {
+            int resume = Math.min(end, checkpoint.getRow());
+            similarityCount = checkpoint.getSimilarityCount();
+            statistics = checkpoint.getStatistics();
+            done = pairs(size, first, resume);
+            first = resume;
+            System.out.println("Resume at sentence " + first + " with " + similarityCount + " similarities\n");
+            log.info("Resume similarity calculation at row " + first + " of " + size);
+        }
+
+        startProgress(pairs, done);
+
+        final int tilesPerWave = parallelism * 4;
+        List<SimilarityTile> tiles = SimilarityTile.split(this, index, first, end, tilesPerWave * 16);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long scored = 0;
+        try {
+            for (int wave = 0; wave < tiles.size(); wave += tilesPerWave) {
+                List<SimilarityTile> current = tiles.subList(wave, Math.min(tiles.size(), wave + tilesPerWave));
+                for (SimilarityTile tile : current) {
+                    pool.execute(tile);
+                }
+                for (SimilarityTile tile : current) {
+                    tile.join();
+                    emitScored(tile.entries);
+                    statistics.merge(tile.statistics);
+                    scored += tile.scored;
+                    done += tile.pairs();
+                    metrics.progress(tile.pairs(), tile.scored, similarityCount);
+                    tile.entries.clear();
+                    tile.statistics = null;
+                }
+                System.out.println((pairs > 0 ? (100 * done / pairs) : 100) + "% calculated");
+                if (checkpoint != null && checkpoint.isDue()) {
+                    saveCheckpoint(current.get(current.size() - 1).to);
+                }
+            }
+            if (checkpoint != null) {
+                saveCheckpoint(end);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Parallel mode scored " + scored + " of " + pairs + " pairs on " + parallelism + " threads");
+    }
+
+    /**
+     * Starts the progress of this calculation in the {@link metrics.Metrics}.
+     * The representatives of a collapsed matrix add their pairs to the progress of the collapsed matrix.
+     *
+     * @param pairs Number of pairs of the calculation
+     * @param skipped Pairs done by an earlier run
+     */
+    private void startProgress(long pairs, long skipped) {
+        if (!representatives) {
+            metrics.startCalculation(pairs, skipped);
+        }
+    }
+
+    /**
+     * Number of pairs (i, j) with j &gt; i in the rows from to to
+     *
+     * @param size Number of sentences
+     * @param from First row
+     * @param to Row behind the last row
+     * @return Number of pairs
+     */
+    static long pairs(int size, int from, int to) {
+        long rows = to - from;
+        return rows * (size - 1) - (rows * ((long) from + to - 1)) / 2;
+    }
+
+    /**
+     * First row of a shard. The shards split the triangular pair space into parts with nearly the same
+     * number of pairs, shard p covers the rows from shardStart(size, p, shards) to shardStart(size, p + 1, shards).
+     *
+     * @param size Number of sentences
+     * @param shard Number of the shard, shards gives the end of the last shard
+     * @param shards Number of shards
+     * @return First row of the shard
+     */
+    public static int shardStart(int size, int shard, int shards) {
+        if (shard >= shards) {
+            return size;
+        }
+        long target = (pairs(size, 0, size) * shard) / shards;
+        long covered = 0;
+        int row = 0;
+        while (row < size && covered < target) {
+            covered += size - 1 - row;
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * IDs of the first and the last sentence of a shard. Coordinator and workers compare them,
+     * to make sure all processes split the same sentences in the same order.
+     *
+     * @param shard Number of the shard
+     * @return s_id of the first and the last sentence of the shard, both -1 for a shard without sentences
+     */
+    public int[] getShardIds(int shard) {
+        int first = shardStart(size, shard, opt.getSimilarityShards());
+        int end = shardStart(size, shard + 1, opt.getSimilarityShards());
+        if (first >= end) {
+            return new int[]{-1, -1};
+        }
+        return new int[]{sentenceList.get(first).getId(), sentenceList.get(end - 1).getId()};
+    }
+
+    /**
+     * Passes an entry above the threshold to the {@link #sink}
+     *
+     * @param sentenceId1 ID of the first sentence
+     * @param sentenceId2 ID of the second sentence
+     * @param similarity Similarity between both sentences
+     * @throws IOException Thrown, if the sink failed
+     */
+    private void emit(int sentenceId1, int sentenceId2, float similarity) throws IOException {
+        sink.add(sentenceId1, sentenceId2, similarity);
+        similarityCount++;
+        statistics.add(similarity);
+    }
+
+    /**
+     * Passes all given entries to the {@link #sink}
+     *
+     * @param entries Entries above the threshold
+     * @throws IOException Thrown, if the sink failed
+     */
+    private void emitAll(SimilarityResults entries) throws IOException {
+        for (int row = 0; row < entries.size(); row++) {
+            emit(entries.getSentenceId1(row), entries.getSentenceId2(row), entries.getSimilarity(row));
+        }
+    }
+
+    /**
+     * Passes all entries of a {@link similarity.SimilarityTile} to the {@link #sink},
+     * they are already counted in the statistics of the tile
+     *
+     * @param entries Entries above the threshold
+     * @throws IOException Thrown, if the sink failed
+     */
+    private void emitScored(SimilarityResults entries) throws IOException {
+        for (int row = 0; row < entries.size(); row++) {
+            sink.add(entries.getSentenceId1(row), entries.getSentenceId2(row), entries.getSimilarity(row));
+        }
+        similarityCount += entries.size();
+    }
+
+    /**
+     * Scores all pairs (i, j) with j &gt; i and adds them to the given tile.
+     * If the tile has an {@link similarity.InvertedIndex} only pairs sharing a word are scored.
+     *
+     * @param i Row to be computed
+     * @param tile Receives the entries and counters
+     */
+    void scoreRow(int i, SimilarityTile tile) {
+        Sentence s1 = sentenceList.get(i);
+        if (tile.index == null) {
+            for (int j = i+1; j < size; ++j) {
+                float similarity = 0.0f;
+                Sentence s2 = sentenceList.get(j);
+                if( s1.size() > 0 && s2.size() > 0 ) {
+                    similarity = score(i, j);
+                    tile.scored++;
+                }
+                if(similarity > threshold){
+                    tile.entries.add(s1.getId(), s2.getId(), similarity);
+                    tile.statistics.add(similarity);
+                } else {
+                    tile.statistics.reject();
+                }
+            }
+            return;
+        }
+
+        int count = tile.index.candidates(i, tile.stamp, tile.candidates);
+        Arrays.sort(tile.candidates, 0, count);
+        for (int k = 0; k < count; k++) {
+            Sentence s2 = sentenceList.get(tile.candidates[k]);
+            float similarity = score(i, tile.candidates[k]);
+            if(similarity > threshold){
+                tile.entries.add(s1.getId(), s2.getId(), similarity);
+                tile.statistics.add(similarity);
+            } else {
+                tile.statistics.reject();
+            }
+        }
+        tile.statistics.reject((size - 1 - i) - count);
+        tile.scored += count;
+    }
+
+    /**
+     * Computes the similarity between the sentences at position i and j
+     * with the kernel chosen in the options
+     *
+     * @param i Position of the first sentence
+     * @param j Position of the second sentence
+     * @return Similarity between both sentences
+     */
+    private float score(int i, int j) {
+        if (stringKernel) {
+            return calculateSimilarity(sentenceList.get(i), sentenceList.get(j));
+        }
+        if (bitsets != null) {
+            return bitsets.similarity(i, j);
+        }
+        if (earlyExit) {
+            // an abandoned pair is below the threshold and rejected like every other
+            return encoded.similarity(i, j, threshold);
+        }
+        return encoded.similarity(i, j);
+    }
+
+    /**
+     * @return Number of sentences compared by this matrix
+     */
+    int size() {
+        return size;
     }
 
     /**
@@ -186,25 +1017,31 @@ public class SimilarityMatrix {
     }
 
     /**
-     * Calculates the normalized similarity distribution of this matrix
+     * Calculates the normalized similarity distribution of this matrix from its {@link similarity.SimilarityStatistics}.
+     * Pairs below the threshold belong to the first data point.
+     * Above {@link similarity.SimilarityStatistics#MAX_GRANULARITY} data points the histogram is too coarse,
+     * the distribution is then counted from the entries of {@link #getSimilarityMatrix()} like before the statistics,
+     * so entries passed only to a sink are missing.
      *
      * @param granularity the number of data points to be calculated for this distribution
      * @return List of normalized frequencies
      */
     public List<Double> similarityDistribution(int granularity){
-        int counts[] = new int[granularity];
-        int count_all = this.zeroSimilarityCount;
-        counts[0] = this.zeroSimilarityCount;
-        for(SimilarityEntry s: this.matrix){
-            int position = (int)(s.similarity*granularity);
+        if (granularity <= SimilarityStatistics.MAX_GRANULARITY) {
+            return statistics.distribution(granularity);
+        }
+        long[] counts = new long[granularity];
+        long countAll = statistics.getRejected();
+        counts[0] = statistics.getRejected();
+        for(int row = 0; row < this.matrix.size(); row++){
+            int position = (int)(this.matrix.getSimilarity(row)*granularity);
             position = (position == granularity)?(position - 1):position;
             counts[position] += 1;
-            count_all += 1;
+            countAll += 1;
         }
         ArrayList<Double> dist = new ArrayList<Double>(granularity);
         for(int position=0; position<granularity; position++){
-            Double value = counts[position] / (double) count_all;
-            dist.add(position, value);
+            dist.add(counts[position] / (double) countAll);
         }
         return dist;
     }
@@ -227,8 +1064,8 @@ public class SimilarityMatrix {
         result += "Similarities:\n";
 
         int entry_count = 0;
-        for(SimilarityEntry s: matrix){
-            result += "("+s.sentenceId_1+"|"+s.sentenceId_2+") : " + s.similarity;
+        for(int row = 0; row < matrix.size(); row++){
+            result += "("+matrix.getSentenceId1(row)+"|"+matrix.getSentenceId2(row)+") : " + matrix.getSimilarity(row);
             entry_count += 1;
             if( entry_count == MAX_ENTRIES ){
                 result += "\n(.....)";
@@ -239,10 +1076,128 @@ public class SimilarityMatrix {
         return result;
     }
 
+    /**
+     * Flushes the sink and records all rows before the given row as done
+     *
+     * @param row Next row to be calculated
+     */
+    private void saveCheckpoint(int row) throws IOException {
+        sink.flush();
+        checkpoint.save(row, similarityCount, statistics);
+        log.info("Checkpoint at row " + row + " of " + size + " with " + similarityCount + " similarities");
+    }
+
+    /**
+     * Lets the calculation save its progress to the given checkpoint and resume from it.
+     * Must be called before {@link #calculateSimilarity()} and after {@link #setWatermark(long)}.
+     * Checkpoints are only written for the row wise modes, not with similarityTopK, in similarityMode "join"
+     * or with a watermark.
+     * <p>
+     * The sink must already contain the {@link similarity.SimilarityCheckpoint#getSimilarityCount()} entries
+     * flushed before the checkpoint, entries written after it are written again.
+     *
+     * @param checkpoint Progress of an earlier calculation or an empty checkpoint
+     * @return True if the calculation resumes from the checkpoint
+     * @throws IOException Thrown, if the checkpoint could not be read
+     */
+    public boolean setCheckpoint(SimilarityCheckpoint checkpoint) throws IOException {
+        double threshold = opt.getSimilarityThreshold();
+        if (watermark >= 0 || (threshold >= 0 && (opt.getSimilarityTopK() > 0 || opt.isJoinMode()))) {
+            log.info("No checkpoints for this similarity mode");
+            return false;
+        }
+        this.checkpoint = checkpoint;
+        return checkpoint.load(fingerprint());
+    }
+
+    /**
+     * Hash of everything, which changes the result: the options, the rare words and the reduced sentences
+     *
+     * @return Fingerprint as hex string
+     */
+    private String fingerprint() {
+        MessageDigest digest = sha1();
+        StringBuilder sb = new StringBuilder();
+        sb.append(opt.getSimilarityThreshold()).append('|').append(opt.getMinimumMatchLength())
+                .append('|').append(opt.getSimilarityShard()).append('|').append(opt.getSimilarityShards())
+                .append('|').append(watermark).append('|').append(rareWordHash).append('|').append(size)
+                .append('|').append(opt.getSimilarityMeasure());
+        digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        for (Sentence sentence : sentenceList) {
+            sb.setLength(0);
+            sb.append('\n').append(sentence.getId()).append('|').append(sentence.getInitiallength());
+            for (String word : sentence) {
+                sb.append('|').append(word);
+            }
+            digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Hash of the options and the rare words, which change the sentences compared or their similarities.
+     * It is stored with the watermark, an incremental run keeps only the similarities of a run with the same hash.
+     *
+     * @return Fingerprint
+     */
+    public long getResultFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(opt.getSimilarityThreshold()).append('|').append(opt.getMinimumMatchLength())
+                .append('|').append(opt.isIgnoreCases()).append('|').append(opt.isEditUmlauts()).append('|').append(opt.isOnlyNouns())
+                .append('|').append(opt.isPercent()).append('|').append(opt.getPercentValue())
+                .append('|').append(opt.isByRange()).append('|').append(opt.getLowerLimit()).append('|').append(opt.getHigherLimit())
+                .append('|').append(opt.getSimilarityMeasure()).append('|').append(rareWordHash);
+        byte[] hash = sha1().digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+        long fingerprint = 0;
+        for (int b = 0; b < 8; b++) {
+            fingerprint = (fingerprint << 8) | (hash[b] & 0xFF);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return New SHA-1 digest
+     */
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Restricts the calculation to pairs with at least one sentence ID above the given watermark.
+     * Must be called before {@link #calculateSimilarity()}.
+     *
+     * @param watermark Highest sentence ID of the last run, -1 computes all pairs
+     */
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * @return Counters and histogram of all pairs computed so far
+     */
+    public SimilarityStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return Number of entries above the threshold passed to the sink
+     */
+    public long getSimilarityCount() {
+        return similarityCount;
+    }
+
     /**
      * @return SimilarityMatrix
      */
-    public  List<SimilarityEntry> getSimilarityMatrix() {
+    public SimilarityResults getSimilarityMatrix() {
         return matrix;
     }
 }
@@ -0,0 +1,79 @@
+package similarity;
+
+/**
+ * Similarity function between two sentences of an {@link similarity.EncodedSentenceList}.
+ * <p>
+ * The kernels count the matched distinct words and their length, the measure turns them into a similarity.
+ * Every measure must grow with both counts and must be 0 without matched words.
+ * The bounds let every pruning strategy work with every measure:
+ * {@link #upperBound} for the length and bound filters, {@link #windowBound} for the length window and
+ * the overlap and prefix functions for the {@link similarity.PrefixFilterJoin}.
+ * Sentences are ordered by {@link #size} for the window and the join.
+ *
+ * @author Martin Stoffers
+ */
+public interface SimilarityMeasure {
+
+    /**
+     * @return Name used in option similarityMeasure
+     */
+    String getName();
+
+    /**
+     * @param sentences Encoded sentences
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @param matched Number of distinct words in both sentences
+     * @param matchLength Length of the distinct words in both sentences
+     * @return Similarity between both sentences
+     */
+    float similarity(EncodedSentenceList sentences, int a, int b, int matched, int matchLength);
+
+    /**
+     * @param sentences Encoded sentences
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @return Upper bound of the similarity without comparing the words
+     */
+    double upperBound(EncodedSentenceList sentences, int a, int b);
+
+    /**
+     * @param sentences Encoded sentences
+     * @param i Position of a sentence
+     * @return Size of the sentence, which orders the sentences for {@link #windowBound} and {@link #indexPrefix}
+     */
+    int size(EncodedSentenceList sentences, int i);
+
+    /**
+     * @param sentences Encoded sentences
+     * @param a Position of a sentence
+     * @param partnerSize {@link #size} of a partner, not smaller than the size of a
+     * @return Upper bound of the similarity to every partner of this size or larger
+     */
+    double windowBound(EncodedSentenceList sentences, int a, int partnerSize);
+
+    /**
+     * @param sentences Encoded sentences
+     * @param a Position of the first sentence
+     * @param b Position of the second sentence
+     * @param threshold Similarity threshold
+     * @return Smallest number of matched words, which can exceed the threshold, at least 1
+     */
+    int requiredOverlap(EncodedSentenceList sentences, int a, int b, double threshold);
+
+    /**
+     * @param sentences Encoded sentences
+     * @param a Position of a sentence
+     * @param threshold Similarity threshold
+     * @return Number of rarest words of the sentence, which must contain a match with every partner above the threshold
+     */
+    int probePrefix(EncodedSentenceList sentences, int a, double threshold);
+
+    /**
+     * @param sentences Encoded sentences
+     * @param a Position of a sentence
+     * @param threshold Similarity threshold
+     * @return Like {@link #probePrefix}, but only for partners whose {@link #size} is not smaller
+     */
+    int indexPrefix(EncodedSentenceList sentences, int a, double threshold);
+}
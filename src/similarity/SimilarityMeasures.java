@@ -0,0 +1,57 @@
+package similarity;
+
+/**
+ * Provides the available {@link similarity.SimilarityMeasure} implementations by name
+ *
+ * @author Martin Stoffers
+ */
+public final class SimilarityMeasures {
+
+    /**
+     * Safety margin for all floating point bounds, so no pair above the threshold is lost by rounding
+     */
+    static final double EPS = 1e-6;
+
+    /**
+     * Names of all measures, the first is the default
+     */
+    public static final String[] NAMES = {"weighted", "jaccard", "overlap", "cosine"};
+
+    private SimilarityMeasures() {
+    }
+
+    /**
+     * @param name Name of a measure
+     * @return The measure
+     * @throws IllegalArgumentException Thrown, if there is no measure with this name
+     */
+    public static SimilarityMeasure forName(String name) {
+        if (name.equals("weighted")) {
+            return new WeightedMeasure();
+        } else if (name.equals("jaccard")) {
+            return new JaccardMeasure();
+        } else if (name.equals("overlap")) {
+            return new OverlapMeasure();
+        } else if (name.equals("cosine")) {
+            return new CosineMeasure();
+        }
+        throw new IllegalArgumentException("Unknown similarity measure " + name);
+    }
+
+    /**
+     * @param bound Lower bound for the overlap
+     * @return Smallest overlap strictly greater than the given bound, at least one
+     */
+    static int requiredOverlap(double bound) {
+        return Math.max(1, (int) Math.floor(bound - EPS) + 1);
+    }
+
+    /**
+     * @param distinct Number of distinct words of a sentence
+     * @param required Number of words which must match
+     * @return Number of words, which must contain at least one match, between 0 and distinct
+     */
+    static int prefix(int distinct, int required) {
+        return Math.max(0, Math.min(distinct, distinct - required + 1));
+    }
+}
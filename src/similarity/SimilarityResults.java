@@ -0,0 +1,374 @@
+package similarity;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Growable columnar storage of similarity entries.
+ * Every entry takes 12 bytes in three primitive arrays instead of a {@link similarity.SimilarityEntry}
+ * with boxed values. The {@link java.util.List} view creates a {@link similarity.SimilarityEntry} on every access,
+ * the getters by row do not allocate.
+ * <p>
+ * Pairs are identified by a packed long key, see {@link #key(int, int)}.
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityResults extends AbstractList<SimilarityEntry> implements SimilaritySink {
+
+    /**
+     * First sentence ID of every entry
+     */
+    private int[] sentenceIds1;
+
+    /**
+     * Second sentence ID of every entry
+     */
+    private int[] sentenceIds2;
+
+    /**
+     * Similarity of every entry
+     */
+    private float[] similarities;
+
+    /**
+     * Number of entries
+     */
+    private int size = 0;
+
+    /**
+     * Open addressing table from packed keys to rows + 1, built on the first lookup
+     */
+    private long[] lookupKeys = null;
+
+    /**
+     * Rows + 1 belonging to {@link #lookupKeys}, 0 marks an empty slot
+     */
+    private int[] lookupRows = null;
+
+    /**
+     * Instantiate an empty storage with a small initial capacity
+     */
+    public SimilarityResults() {
+        this(16);
+    }
+
+    /**
+     * @param capacity Initial capacity
+     */
+    public SimilarityResults(int capacity) {
+        capacity = Math.max(1, capacity);
+        sentenceIds1 = new int[capacity];
+        sentenceIds2 = new int[capacity];
+        similarities = new float[capacity];
+    }
+
+    /**
+     * Packs both sentence IDs into one key
+     *
+     * @param sentenceId1 ID of the first sentence
+     * @param sentenceId2 ID of the second sentence
+     * @return Key of the pair
+     */
+    public static long key(int sentenceId1, int sentenceId2) {
+        return ((long) sentenceId1 << 32) | (sentenceId2 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Appends an entry
+     *
+     * @param sentenceId1 ID of the first sentence
+     * @param sentenceId2 ID of the second sentence
+     * @param similarity Similarity between both sentences
+     */
+    @Override
+    public void add(int sentenceId1, int sentenceId2, float similarity) {
+        if (size == sentenceIds1.length) {
+            int capacity = sentenceIds1.length + (sentenceIds1.length >> 1) + 1;
+            sentenceIds1 = Arrays.copyOf(sentenceIds1, capacity);
+            sentenceIds2 = Arrays.copyOf(sentenceIds2, capacity);
+            similarities = Arrays.copyOf(similarities, capacity);
+        }
+        sentenceIds1[size] = sentenceId1;
+        sentenceIds2[size] = sentenceId2;
+        similarities[size] = similarity;
+        size++;
+        lookupKeys = null;
+        lookupRows = null;
+        modCount++;
+    }
+
+    @Override
+    public boolean add(SimilarityEntry entry) {
+        add(entry.sentenceId_1, entry.sentenceId_2, entry.similarity);
+        return true;
+    }
+
+    /**
+     * Appends all entries of another storage
+     *
+     * @param other Entries to be appended
+     */
+    public void addAll(SimilarityResults other) {
+        for (int row = 0; row < other.size; row++) {
+            add(other.sentenceIds1[row], other.sentenceIds2[row], other.similarities[row]);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public SimilarityEntry get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return new SimilarityEntry(sentenceIds1[row], sentenceIds2[row], similarities[row]);
+    }
+
+    /**
+     * @param row Row of an entry
+     * @return ID of the first sentence
+     */
+    public int getSentenceId1(int row) {
+        return sentenceIds1[row];
+    }
+
+    /**
+     * @param row Row of an entry
+     * @return ID of the second sentence
+     */
+    public int getSentenceId2(int row) {
+        return sentenceIds2[row];
+    }
+
+    /**
+     * @param row Row of an entry
+     * @return Similarity of the entry
+     */
+    public float getSimilarity(int row) {
+        return similarities[row];
+    }
+
+    /**
+     * @param row Row of an entry
+     * @return Packed key of the entry
+     */
+    public long getKey(int row) {
+        return key(sentenceIds1[row], sentenceIds2[row]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        lookupKeys = null;
+        lookupRows = null;
+        modCount++;
+    }
+
+    /**
+     * Finds the row of a pair
+     *
+     * @param sentenceId1 ID of the first sentence
+     * @param sentenceId2 ID of the second sentence
+     * @return Row of the first entry with this pair or -1 if the pair is not stored
+     */
+    public int indexOf(int sentenceId1, int sentenceId2) {
+        if (lookupKeys == null) {
+            buildLookup();
+        }
+        long key = key(sentenceId1, sentenceId2);
+        int mask = lookupKeys.length - 1;
+        for (int slot = hash(key) & mask; lookupRows[slot] != 0; slot = (slot + 1) & mask) {
+            if (lookupKeys[slot] == key) {
+                return lookupRows[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param sentenceId1 ID of the first sentence
+     * @param sentenceId2 ID of the second sentence
+     * @return Whether the pair is stored
+     */
+    public boolean contains(int sentenceId1, int sentenceId2) {
+        return indexOf(sentenceId1, sentenceId2) >= 0;
+    }
+
+    /**
+     * Builds the lookup table for all stored keys. The first row of every key wins.
+     */
+    private void buildLookup() {
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        long[] keys = new long[capacity];
+        int[] rows = new int[capacity];
+        int mask = capacity - 1;
+        for (int row = 0; row < size; row++) {
+            long key = getKey(row);
+            int slot = hash(key) & mask;
+            while (rows[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (rows[slot] == 0) {
+                keys[slot] = key;
+                rows[slot] = row + 1;
+            }
+        }
+        lookupKeys = keys;
+        lookupRows = rows;
+    }
+
+    /**
+     * Removes all entries whose pair has already been stored in an earlier row.
+     * The later entry wins, like ON DUPLICATE KEY UPDATE in table sentence_similarity.
+     *
+     * @return Number of removed entries
+     */
+    public int removeDuplicates() {
+        if (lookupKeys == null) {
+            buildLookup();
+        }
+        // remember the last row of every key
+        int mask = lookupKeys.length - 1;
+        for (int row = 0; row < size; row++) {
+            long key = getKey(row);
+            int slot = hash(key) & mask;
+            while (lookupKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            lookupRows[slot] = row + 1;
+        }
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            long key = getKey(row);
+            int slot = hash(key) & mask;
+            while (lookupKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            int last = lookupRows[slot] - 1;
+            if (last < 0) {
+                continue;
+            }
+            // move the last entry of the key to the position of its first occurrence
+            sentenceIds1[kept] = sentenceIds1[last];
+            sentenceIds2[kept] = sentenceIds2[last];
+            similarities[kept] = similarities[last];
+            lookupRows[slot] = 0;
+            kept++;
+        }
+        int removed = size - kept;
+        size = kept;
+        lookupKeys = null;
+        lookupRows = null;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Sorts all entries by their packed key, ascending by the first and then the second sentence ID
+     */
+    public void sortByKey() {
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = getKey(row);
+        }
+        sort(keys, 0, size - 1);
+        lookupKeys = null;
+        lookupRows = null;
+        modCount++;
+    }
+
+    /**
+     * Quicksort on the keys, which swaps all columns
+     */
+    private void sort(long[] keys, int low, int high) {
+        while (low < high) {
+            if (high - low < 16) {
+                for (int i = low + 1; i <= high; i++) {
+                    for (int j = i; j > low && keys[j - 1] > keys[j]; j--) {
+                        swap(keys, j, j - 1);
+                    }
+                }
+                return;
+            }
+            long pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, i++, j--);
+                }
+            }
+            // recurse into the smaller part
+            if (j - low < high - i) {
+                sort(keys, low, j);
+                low = i;
+            } else {
+                sort(keys, i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * Swaps two rows in all columns
+     */
+    private void swap(long[] keys, int a, int b) {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        int id = sentenceIds1[a];
+        sentenceIds1[a] = sentenceIds1[b];
+        sentenceIds1[b] = id;
+        id = sentenceIds2[a];
+        sentenceIds2[a] = sentenceIds2[b];
+        sentenceIds2[b] = id;
+        float similarity = similarities[a];
+        similarities[a] = similarities[b];
+        similarities[b] = similarity;
+    }
+
+    /**
+     * Spreads the bits of a packed key
+     */
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Replays all entries into a sink, without closing it
+     *
+     * @param sink Receives all entries
+     * @throws IOException Thrown, if the sink failed
+     */
+    public void writeTo(SimilaritySink sink) throws IOException {
+        for (int row = 0; row < size; row++) {
+            sink.add(sentenceIds1[row], sentenceIds2[row], similarities[row]);
+        }
+    }
+
+    /**
+     * @return Approximate memory used by the columns in bytes
+     */
+    public long memoryFootprint() {
+        return 12L * sentenceIds1.length;
+    }
+}
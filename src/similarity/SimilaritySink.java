@@ -0,0 +1,36 @@
+package similarity;
+
+import java.io.IOException;
+
+/**
+ * Receives the entries of a {@link similarity.SimilarityMatrix} while they are calculated.
+ * Entries arrive in the order of the brute force loop.
+ *
+ * @author Martin Stoffers
+ */
+public interface SimilaritySink {
+
+    /**
+     * Receives one entry above the threshold
+     *
+     * @param sentenceId1 ID of the first sentence
+     * @param sentenceId2 ID of the second sentence
+     * @param similarity Similarity between both sentences
+     * @throws IOException Thrown, if the entry could not be stored
+     */
+    void add(int sentenceId1, int sentenceId2, float similarity) throws IOException;
+
+    /**
+     * Stores all pending entries durably, so they survive a crash of the calculation
+     *
+     * @throws IOException Thrown, if the pending entries could not be stored
+     */
+    void flush() throws IOException;
+
+    /**
+     * Stores all pending entries and releases all resources
+     *
+     * @throws IOException Thrown, if the pending entries could not be stored
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,274 @@
+package similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Counters and histogram of a similarity calculation, updated while the pairs are scored.
+ * <p>
+ * Every pair is either an entry above the threshold or rejected. Like in {@link similarity.SimilarityMatrix#similarityDistribution(int)}
+ * rejected pairs belong to the first data point, entries to the data point of their similarity.
+ * The histogram has fixed buckets, whose borders are all floats where (int)(similarity * granularity) changes
+ * for a granularity up to {@link #MAX_GRANULARITY}. So every distribution is summed up exactly from the buckets.
+ * <p>
+ * Each thread or shard keeps its own statistics, which are merged by {@link #merge(SimilarityStatistics)}.
+ * Not thread safe.
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityStatistics {
+
+    /**
+     * Largest granularity of {@link #distribution(int)}
+     */
+    public static final int MAX_GRANULARITY = 100;
+
+    /**
+     * Ascending lower borders of the buckets behind the first one
+     */
+    private static final float[] BORDERS = borders();
+
+    /**
+     * Entries of every bucket
+     */
+    private final long[] buckets = new long[BORDERS.length + 1];
+
+    /**
+     * Number of entries above the threshold
+     */
+    private long count = 0;
+
+    /**
+     * Number of pairs not above the threshold
+     */
+    private long rejected = 0;
+
+    /**
+     * Sum of the similarities of all entries
+     */
+    private double sum = 0.0;
+
+    /**
+     * Smallest similarity of all entries
+     */
+    private float min = Float.POSITIVE_INFINITY;
+
+    /**
+     * Largest similarity of all entries
+     */
+    private float max = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Finds the smallest float for every data point of every granularity up to {@link #MAX_GRANULARITY}
+     *
+     * @return Sorted distinct borders
+     */
+    private static float[] borders() {
+        float[] borders = new float[MAX_GRANULARITY * MAX_GRANULARITY / 2];
+        int n = 0;
+        for (int granularity = 2; granularity <= MAX_GRANULARITY; granularity++) {
+            for (int position = 1; position < granularity; position++) {
+                float border = (float) position / granularity;
+                while ((int) (border * granularity) >= position) {
+                    border = Math.nextDown(border);
+                }
+                while ((int) (border * granularity) < position) {
+                    border = Math.nextUp(border);
+                }
+                borders[n++] = border;
+            }
+        }
+        Arrays.sort(borders, 0, n);
+        int distinct = 0;
+        for (int k = 0; k < n; k++) {
+            if (distinct == 0 || borders[distinct - 1] != borders[k]) {
+                borders[distinct++] = borders[k];
+            }
+        }
+        return Arrays.copyOf(borders, distinct);
+    }
+
+    /**
+     * Adds an entry above the threshold
+     *
+     * @param similarity Similarity of the entry
+     */
+    public void add(float similarity) {
+        int position = Arrays.binarySearch(BORDERS, similarity);
+        buckets[(position >= 0) ? position + 1 : -position - 1]++;
+        count++;
+        sum += similarity;
+        min = Math.min(min, similarity);
+        max = Math.max(max, similarity);
+    }
+
+    /**
+     * Adds a pair not above the threshold
+     */
+    public void reject() {
+        rejected++;
+    }
+
+    /**
+     * Adds pairs not above the threshold
+     *
+     * @param pairs Number of pairs
+     */
+    public void reject(long pairs) {
+        rejected += pairs;
+    }
+
+    /**
+     * Adds all pairs of the given statistics
+     *
+     * @param other Statistics of another thread or shard
+     */
+    public void merge(SimilarityStatistics other) {
+        for (int b = 0; b < buckets.length; b++) {
+            buckets[b] += other.buckets[b];
+        }
+        count += other.count;
+        rejected += other.rejected;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Calculates the normalized similarity distribution like {@link similarity.SimilarityMatrix#similarityDistribution(int)}
+     *
+     * @param granularity Number of data points, between 1 and {@link #MAX_GRANULARITY}
+     * @return List of normalized frequencies
+     */
+    public List<Double> distribution(int granularity) {
+        if (granularity < 1 || granularity > MAX_GRANULARITY) {
+            throw new IllegalArgumentException("Granularity must be between 1 and " + MAX_GRANULARITY);
+        }
+        long[] counts = new long[granularity];
+        counts[0] = rejected;
+        for (int b = 0; b < buckets.length; b++) {
+            // no border of this granularity lies inside a bucket, so its lower border decides
+            float lower = (b == 0) ? 0.0f : BORDERS[b - 1];
+            int position = Math.min(granularity - 1, (int) (lower * granularity));
+            counts[position] += buckets[b];
+        }
+        long all = count + rejected;
+        ArrayList<Double> dist = new ArrayList<Double>(granularity);
+        for (int position = 0; position < granularity; position++) {
+            dist.add(counts[position] / (double) all);
+        }
+        return dist;
+    }
+
+    /**
+     * Writes the statistics to the given properties
+     *
+     * @param properties Receives the statistics
+     * @param prefix Prefix of all keys
+     */
+    public void store(Properties properties, String prefix) {
+        properties.setProperty(prefix + "count", Long.toString(count));
+        properties.setProperty(prefix + "rejected", Long.toString(rejected));
+        properties.setProperty(prefix + "sum", Double.toString(sum));
+        properties.setProperty(prefix + "min", Float.toString(min));
+        properties.setProperty(prefix + "max", Float.toString(max));
+        // only the used buckets as bucket:entries
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < buckets.length; b++) {
+            if (buckets[b] > 0) {
+                sb.append((sb.length() > 0) ? "," : "").append(b).append(':').append(buckets[b]);
+            }
+        }
+        properties.setProperty(prefix + "buckets", sb.toString());
+    }
+
+    /**
+     * Reads statistics written by {@link #store(Properties, String)}
+     *
+     * @param properties Properties containing the statistics
+     * @param prefix Prefix of all keys
+     * @return Statistics
+     * @throws NumberFormatException Thrown, if a value is missing or invalid
+     */
+    public static SimilarityStatistics load(Properties properties, String prefix) {
+        SimilarityStatistics statistics = new SimilarityStatistics();
+        statistics.count = Long.parseLong(value(properties, prefix + "count"));
+        statistics.rejected = Long.parseLong(value(properties, prefix + "rejected"));
+        statistics.sum = Double.parseDouble(value(properties, prefix + "sum"));
+        statistics.min = Float.parseFloat(value(properties, prefix + "min"));
+        statistics.max = Float.parseFloat(value(properties, prefix + "max"));
+        String buckets = value(properties, prefix + "buckets");
+        for (String bucket : buckets.split(",")) {
+            if (!bucket.isEmpty()) {
+                int colon = bucket.indexOf(':');
+                statistics.buckets[Integer.parseInt(bucket.substring(0, colon))] = Long.parseLong(bucket.substring(colon + 1));
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * @return Value of the given key
+     * @throws NumberFormatException Thrown, if the key is missing
+     */
+    private static String value(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new NumberFormatException("Missing " + key);
+        }
+        return value;
+    }
+
+    /**
+     * @return Number of entries above the threshold
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Number of pairs not above the threshold
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return Number of all pairs
+     */
+    public long getPairs() {
+        return count + rejected;
+    }
+
+    /**
+     * @return Smallest similarity of all entries, NaN without entries
+     */
+    public float getMin() {
+        return (count > 0) ? min : Float.NaN;
+    }
+
+    /**
+     * @return Largest similarity of all entries, NaN without entries
+     */
+    public float getMax() {
+        return (count > 0) ? max : Float.NaN;
+    }
+
+    /**
+     * @return Mean similarity of all entries, NaN without entries
+     */
+    public double getMean() {
+        return (count > 0) ? sum / count : Double.NaN;
+    }
+
+    /**
+     * @return Counters in a human readable format
+     */
+    @Override
+    public String toString() {
+        return count + " of " + getPairs() + " pairs above the threshold, similarity min " + getMin()
+                + ", max " + getMax() + ", mean " + getMean();
+    }
+}
@@ -0,0 +1,142 @@
+package similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A range of rows of the triangular pair space of a {@link similarity.SimilarityMatrix}.
+ * Row i covers all pairs (i, j) with j &gt; i.
+ * Each tile keeps its own result buffer, so tiles can be computed on different threads
+ * and merged afterwards in their row order.
+ *
+ * @author Martin Stoffers
+ */
+class SimilarityTile extends RecursiveAction {
+
+    private static final long serialVersionUID = 4721904470528843921L;
+
+    /**
+     * Matrix the rows belong to
+     */
+    private final SimilarityMatrix matrix;
+
+    /**
+     * Index for candidate generation, null if every pair should be scored
+     */
+    final InvertedIndex index;
+
+    /**
+     * First row of this tile
+     */
+    final int from;
+
+    /**
+     * Row behind the last row of this tile
+     */
+    final int to;
+
+    /**
+     * Entries above the threshold in row order
+     */
+    final SimilarityResults entries;
+
+    /**
+     * Counters and histogram of the pairs of this tile, allocated by {@link #allocate(int)} and set to null after the merge
+     */
+    SimilarityStatistics statistics;
+
+    /**
+     * Counts pairs which have been scored
+     */
+    long scored = 0;
+
+    /**
+     * Scratch array for {@link similarity.InvertedIndex#candidates}
+     */
+    int[] stamp;
+
+    /**
+     * Scratch array for {@link similarity.InvertedIndex#candidates}
+     */
+    int[] candidates;
+
+    /**
+     * @param matrix Matrix the rows belong to
+     * @param index Index for candidate generation or null
+     * @param from First row
+     * @param to Row behind the last row
+     * @param entries Receives all entries above the threshold
+     */
+    SimilarityTile(SimilarityMatrix matrix, InvertedIndex index, int from, int to, SimilarityResults entries) {
+        this.matrix = matrix;
+        this.index = index;
+        this.from = from;
+        this.to = to;
+        this.entries = entries;
+    }
+
+    /**
+     * Prepares the statistics and the scratch arrays needed by the index
+     *
+     * @param size Size of the sentence list
+     */
+    void allocate(int size) {
+        if (statistics == null) {
+            statistics = new SimilarityStatistics();
+        }
+        if (index != null && stamp == null) {
+            stamp = new int[size];
+            Arrays.fill(stamp, -1);
+            candidates = new int[size];
+        }
+    }
+
+    @Override
+    protected void compute() {
+        allocate(matrix.size());
+        for (int i = from; i < to; i++) {
+            matrix.scoreRow(i, this);
+        }
+        // scratch arrays are not needed anymore while waiting for the merge
+        stamp = null;
+        candidates = null;
+    }
+
+    /**
+     * Splits the rows first to end into tiles with nearly the same amount of pairs
+     *
+     * @param matrix Matrix the rows belong to
+     * @param index Index for candidate generation or null
+     * @param first First row of the first tile
+     * @param end Row behind the last row of the last tile
+     * @param count Desired number of tiles
+     * @return Tiles in row order
+     */
+    static List<SimilarityTile> split(SimilarityMatrix matrix, InvertedIndex index, int first, int end, int count) {
+        int size = matrix.size();
+        long pairs = SimilarityMatrix.pairs(size, first, end);
+        long perTile = Math.max(1, pairs / Math.max(1, count));
+        List<SimilarityTile> tiles = new ArrayList<SimilarityTile>(count + 1);
+
+        int from = first;
+        long tilePairs = 0;
+        for (int i = first; i < end; i++) {
+            tilePairs += size - 1 - i;
+            if (tilePairs >= perTile || i == end - 1) {
+                tiles.add(new SimilarityTile(matrix, index, from, i + 1, new SimilarityResults()));
+                from = i + 1;
+                tilePairs = 0;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * @return Number of pairs covered by this tile
+     */
+    long pairs() {
+        return SimilarityMatrix.pairs(matrix.size(), from, to);
+    }
+}
@@ -0,0 +1,222 @@
+package similarity;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Finds the k most similar sentences for every sentence.
+ * <p>
+ * Every sentence keeps a bounded min-heap of its best partners in two primitive arrays, so the memory
+ * is bounded by n*k regardless how many pairs are above the threshold. Once the heaps of both sentences
+ * are full, a pair must beat the smaller of both k-th scores. Pairs whose
+ * {@link similarity.EncodedSentenceList#upperBound(int, int)} can not reach this effective threshold are not scored.
+ * Only pairs sharing a word are considered, see {@link similarity.InvertedIndex}.
+ *
+ * @author Martin Stoffers
+ */
+public class TopKSimilarity {
+
+    /**
+     * Logger object
+     */
+    private static final Logger log = Logger.getLogger(TopKSimilarity.class.getName());
+
+    /**
+     * Safety margin for the upper bound, so no pair is lost by rounding
+     */
+    private static final double EPS = 1e-6;
+
+    /**
+     * Sentences to be compared
+     */
+    private final EncodedSentenceList sentences;
+
+    /**
+     * Similarity threshold
+     */
+    private final double threshold;
+
+    /**
+     * Number of partners per sentence
+     */
+    private final int k;
+
+    /**
+     * Heap of scores, k slots per sentence
+     */
+    private final float[] heapScores;
+
+    /**
+     * Heap of partner positions, k slots per sentence
+     */
+    private final int[] heapPartners;
+
+    /**
+     * Number of used slots in the heap of every sentence
+     */
+    private final int[] heapSize;
+
+    /**
+     * Pairs which have been scored
+     */
+    private long scored = 0;
+
+    /**
+     * Pairs dropped by the upper bound
+     */
+    private long pruned = 0;
+
+    /**
+     * @param sentences Sentences to be compared
+     * @param threshold Similarity threshold, must not be negative
+     * @param k Number of partners per sentence
+     * @throws IllegalArgumentException Thrown, if the heaps of all sentences do not fit into an array
+     */
+    public TopKSimilarity(EncodedSentenceList sentences, double threshold, int k) {
+        this.sentences = sentences;
+        this.threshold = threshold;
+        this.k = k;
+        int size = sentences.size();
+        if ((long) size * k > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("similarityTopK " + k + " is too large for " + size
+                    + " sentences, the heaps of all sentences must have less than " + Integer.MAX_VALUE + " slots");
+        }
+        this.heapScores = new float[size * k];
+        this.heapPartners = new int[size * k];
+        this.heapSize = new int[size];
+    }
+
+    /**
+     * Computes the heaps of all sentences
+     *
+     * @return All pairs contained in at least one heap, ordered like in the brute force loop
+     */
+    public SimilarityResults calculate() {
+        int size = sentences.size();
+        InvertedIndex index = new InvertedIndex(sentences);
+        int[] stamp = new int[size];
+        Arrays.fill(stamp, -1);
+        int[] candidates = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            int count = index.candidates(i, stamp, candidates);
+            Arrays.sort(candidates, 0, count);
+            for (int c = 0; c < count; c++) {
+                int j = candidates[c];
+                double effective = Math.max(threshold, Math.min(kth(i), kth(j)));
+                if (sentences.upperBound(i, j) + EPS <= effective) {
+                    pruned++;
+                    continue;
+                }
+                float similarity = sentences.similarity(i, j);
+                scored++;
+                if (similarity > threshold) {
+                    offer(i, j, similarity);
+                    offer(j, i, similarity);
+                }
+            }
+        }
+
+        // positions instead of sentence IDs, so the result can be sorted like the brute force loop
+        SimilarityResults found = new SimilarityResults(size);
+        for (int i = 0; i < size; i++) {
+            for (int slot = i * k; slot < i * k + heapSize[i]; slot++) {
+                int j = heapPartners[slot];
+                found.add(Math.min(i, j), Math.max(i, j), heapScores[slot]);
+            }
+        }
+        found.removeDuplicates();
+        found.sortByKey();
+        SimilarityResults result = new SimilarityResults(found.size());
+        for (int row = 0; row < found.size(); row++) {
+            result.add(sentences.id(found.getSentenceId1(row)), sentences.id(found.getSentenceId2(row)), found.getSimilarity(row));
+        }
+
+        System.out.println("Top " + k + " search scored " + scored + " pairs, " + pruned + " pairs pruned by the k-th score");
+        log.info("Top " + k + " search scored " + scored + " pairs, pruned " + pruned + ", found " + result.size());
+        return result;
+    }
+
+    /**
+     * @param i Position of a sentence
+     * @return Score a new partner must beat, negative infinity while the heap is not full
+     */
+    private double kth(int i) {
+        return (heapSize[i] < k) ? Double.NEGATIVE_INFINITY : heapScores[i * k];
+    }
+
+    /**
+     * Offers a partner to the heap of a sentence.
+     * A full heap replaces its worst partner, if the new partner is better.
+     * Partners are ordered by descending similarity and ascending position,
+     * so the result does not depend on the order of the heap.
+     *
+     * @param i Position of the sentence
+     * @param partner Position of the partner
+     * @param similarity Similarity of both sentences
+     */
+    private void offer(int i, int partner, float similarity) {
+        int base = i * k;
+        int n = heapSize[i];
+        if (n < k) {
+            // sift up
+            int child = n;
+            while (child > 0) {
+                int parent = (child - 1) >> 1;
+                if (!worse(similarity, partner, heapScores[base + parent], heapPartners[base + parent])) {
+                    break;
+                }
+                heapScores[base + child] = heapScores[base + parent];
+                heapPartners[base + child] = heapPartners[base + parent];
+                child = parent;
+            }
+            heapScores[base + child] = similarity;
+            heapPartners[base + child] = partner;
+            heapSize[i] = n + 1;
+            return;
+        }
+        if (!worse(heapScores[base], heapPartners[base], similarity, partner)) {
+            return;
+        }
+        // replace the root and sift down
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= k) {
+                break;
+            }
+            if (child + 1 < k && worse(heapScores[base + child + 1], heapPartners[base + child + 1], heapScores[base + child], heapPartners[base + child])) {
+                child++;
+            }
+            if (!worse(heapScores[base + child], heapPartners[base + child], similarity, partner)) {
+                break;
+            }
+            heapScores[base + parent] = heapScores[base + child];
+            heapPartners[base + parent] = heapPartners[base + child];
+            parent = child;
+        }
+        heapScores[base + parent] = similarity;
+        heapPartners[base + parent] = partner;
+    }
+
+    /**
+     * @return Whether partner a is worse than partner b
+     */
+    private static boolean worse(float similarityA, int partnerA, float similarityB, int partnerB) {
+        return similarityA < similarityB || (similarityA == similarityB && partnerA > partnerB);
+    }
+
+    /**
+     * @return Pairs which have been scored
+     */
+    public long getScored() {
+        return scored;
+    }
+
+    /**
+     * @return Pairs dropped by the upper bound
+     */
+    public long getPruned() {
+        return pruned;
+    }
+}
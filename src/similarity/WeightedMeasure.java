@@ -0,0 +1,78 @@
+package similarity;
+
+/**
+ * The original measure of {@link similarity.SimilarityMatrix}:
+ * 0.5*(matched/avgwordcount + matchlength/avglength), where avgwordcount is the mean number of words
+ * including duplicates and avglength the mean initial length of both sentences.
+ * <p>
+ * The length part can not be larger than the largest quotient R of distinct word length and initial length
+ * of any sentence, so a pair can only exceed the threshold t if matched &gt; (2t - R) * avgwordcount.
+ *
+ * @author Martin Stoffers
+ */
+public class WeightedMeasure implements SimilarityMeasure {
+
+    @Override
+    public String getName() {
+        return "weighted";
+    }
+
+    @Override
+    public float similarity(EncodedSentenceList sentences, int a, int b, int matched, int matchLength) {
+        float avglength = 0.5f * (sentences.initialLength(a) + sentences.initialLength(b));
+        float avgwordcount = 0.5f * (sentences.wordCount(a) + sentences.wordCount(b));
+        return 0.5f*(((float)matched/avgwordcount) + ((float)matchLength / avglength));
+    }
+
+    @Override
+    public double upperBound(EncodedSentenceList sentences, int a, int b) {
+        double avgwordcount = 0.5 * (sentences.wordCount(a) + sentences.wordCount(b));
+        double avglength = 0.5 * (sentences.initialLength(a) + sentences.initialLength(b));
+        return 0.5 * (Math.min(sentences.words(a).length, sentences.words(b).length) / avgwordcount
+                + Math.min(sentences.distinctLength(a), sentences.distinctLength(b)) / avglength);
+    }
+
+    @Override
+    public int size(EncodedSentenceList sentences, int i) {
+        return sentences.wordCount(i);
+    }
+
+    @Override
+    public double windowBound(EncodedSentenceList sentences, int a, int partnerSize) {
+        return 0.5 * (2.0 * sentences.words(a).length / (sentences.wordCount(a) + partnerSize) + sentences.maxLengthRatio());
+    }
+
+    @Override
+    public int requiredOverlap(EncodedSentenceList sentences, int a, int b, double threshold) {
+        double c = 2 * threshold - sentences.maxLengthRatio();
+        if (c <= 0) {
+            return 1;
+        }
+        return SimilarityMeasures.requiredOverlap(c * 0.5 * (sentences.wordCount(a) + sentences.wordCount(b)));
+    }
+
+    @Override
+    public int probePrefix(EncodedSentenceList sentences, int a, double threshold) {
+        double c = 2 * threshold - sentences.maxLengthRatio();
+        int distinct = sentences.words(a).length;
+        if (c >= 2) {
+            return 0;
+        } else if (c <= 0) {
+            return distinct;
+        }
+        // the smallest possible partner bounds the average word count
+        int wordCount = sentences.wordCount(a);
+        double minPartner = c * wordCount / (2 - c);
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(c * 0.5 * (minPartner + wordCount)));
+    }
+
+    @Override
+    public int indexPrefix(EncodedSentenceList sentences, int a, double threshold) {
+        double c = 2 * threshold - sentences.maxLengthRatio();
+        int distinct = sentences.words(a).length;
+        if (c <= 0) {
+            return distinct;
+        }
+        return SimilarityMeasures.prefix(distinct, SimilarityMeasures.requiredOverlap(c * sentences.wordCount(a)));
+    }
+}
@@ -0,0 +1,76 @@
+package similarity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Corpus wide dictionary, which maps every word to an int ID.
+ * IDs are given in order of the first occurrence, starting with 0.
+ * The length of every word is cached for the similarity kernel.
+ *
+ * @author Martin Stoffers
+ */
+public class WordDictionary {
+
+    /**
+     * Maps words to their IDs
+     */
+    private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * Contains the length of every word indexed by its ID
+     */
+    private int[] lengths = new int[1024];
+
+    /**
+     * Returns the ID of the given word. Unknown words get a new ID.
+     *
+     * @param word A word
+     * @return ID of the word
+     */
+    public int id(String word) {
+        Integer id = ids.get(word);
+        if (id == null) {
+            id = ids.size();
+            ids.put(word, id);
+            if (id == lengths.length) {
+                lengths = Arrays.copyOf(lengths, lengths.length * 2);
+            }
+            lengths[id] = word.length();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of the given word without adding it
+     *
+     * @param word A word
+     * @return ID of the word or -1 if the word is unknown
+     */
+    public int lookup(String word) {
+        Integer id = ids.get(word);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param id ID of a word
+     * @return Length of the word
+     */
+    public int length(int id) {
+        return lengths[id];
+    }
+
+    /**
+     * @return Lengths of all words indexed by their IDs. The array may be longer than {@link #size()}
+     */
+    public int[] lengths() {
+        return lengths;
+    }
+
+    /**
+     * @return Number of words in this dictionary
+     */
+    public int size() {
+        return ids.size();
+    }
+}
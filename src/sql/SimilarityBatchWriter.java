@@ -0,0 +1,120 @@
+package sql;
+
+import metrics.BatchEvent;
+import metrics.Metrics;
+import similarity.SimilaritySink;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Writes entries into table sentence_similarity in batches of a bounded size.
+ * Every full batch is executed and committed, so only one batch is held in memory.
+ *
+ * @author Martin Stoffers
+ */
+public class SimilarityBatchWriter implements SimilaritySink {
+
+    /**
+     * Bytes of the parameters of one row
+     */
+    private static final int ROW_BYTES = 12;
+
+    /**
+     * Connection the batches are written to
+     */
+    private final Connection connect;
+
+    /**
+     * Insert statement for sentence_similarity
+     */
+    private final PreparedStatement preparedStatement;
+
+    /**
+     * Maximum number of rows per batch
+     */
+    private final int batchSize;
+
+    /**
+     * Rows in the current batch
+     */
+    private int pending = 0;
+
+    /**
+     * Counts all written rows
+     */
+    private long count = 0;
+
+    /**
+     * @param connect Open connection to the database
+     * @param batchSize Maximum number of rows per batch
+     * @throws SQLException Thrown, if the statement could not be prepared
+     */
+    SimilarityBatchWriter(Connection connect, int batchSize) throws SQLException {
+        this.connect = connect;
+        this.batchSize = Math.max(1, batchSize);
+        this.connect.setAutoCommit(false);
+        this.preparedStatement = connect.prepareStatement("INSERT INTO sentence_similarity (s_id_1, s_id_2, similarity) VALUES (?,?,?) ON DUPLICATE KEY UPDATE similarity=values(similarity)");
+    }
+
+    @Override
+    public void add(int sentenceId1, int sentenceId2, float similarity) throws IOException {
+        try {
+            preparedStatement.setInt(1, sentenceId1);
+            preparedStatement.setInt(2, sentenceId2);
+            preparedStatement.setFloat(3, similarity);
+            preparedStatement.addBatch();
+            pending++;
+            count++;
+            if (pending >= batchSize) {
+                executeBatch();
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Executes and commits the current batch, which is recorded by the {@link metrics.Metrics}
+     *
+     * @throws SQLException Thrown, if the batch failed
+     */
+    private void executeBatch() throws SQLException {
+        if (pending > 0) {
+            BatchEvent event = Metrics.getInstance().startBatch();
+            preparedStatement.executeBatch();
+            connect.commit();
+            Metrics.getInstance().endBatch(event, "sentence_similarity", pending, (long) pending * ROW_BYTES);
+            pending = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            executeBatch();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            executeBatch();
+            preparedStatement.close();
+            connect.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return Number of rows written by this writer
+     */
+    public long getCount() {
+        return count;
+    }
+}
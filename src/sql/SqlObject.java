@@ -1,14 +1,19 @@
 package sql;
 
 import computations.WordCounter;
+import metrics.BatchEvent;
+import metrics.Metrics;
+import model.CompactSentenceList;
 import model.Options;
 import model.SentenceList;
-import similarity.SimilarityEntry;
+import similarity.SimilarityFileSink;
 import similarity.SimilarityMatrix;
+import similarity.SimilarityResults;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.util.HashMap;
-import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -24,6 +29,14 @@ public class SqlObject {
      */
     private static final Logger log = Logger.getLogger(WordCounter.class.getName());
 
+    /**
+     * Creates the table holding the watermark and the fingerprint of the last similarity run
+     */
+    private static final String CREATE_SIMILARITY_STATE = " CREATE TABLE IF NOT EXISTS similarity_state " +
+            " (name varchar(70) NOT NULL," +
+            " value bigint(20) NOT NULL," +
+            " PRIMARY KEY (name));";
+
     /**
      * Properties object
      */
@@ -256,7 +269,7 @@ public class SqlObject {
 
         Statement statement = connect.createStatement();
 
-        String query = "SELECT s_id, sentence FROM sentences limit " + limit;
+        String query = "SELECT s_id, sentence FROM sentences ORDER BY s_id limit " + limit;
         ResultSet result =  statement.executeQuery(query);
         System.out.println("Preprocessing Sentences");
         SentenceList sentenceList = new SentenceList(result, opt);
@@ -278,7 +291,7 @@ public class SqlObject {
 
         Statement statement = connect.createStatement();
 
-        String query = "SELECT s_id, sentence FROM sentences";
+        String query = "SELECT s_id, sentence FROM sentences ORDER BY s_id";
         ResultSet result =  statement.executeQuery(query);
 
         System.out.println("Preprocessing Sentences");
@@ -287,6 +300,76 @@ public class SqlObject {
         return sentenceList;
     }
 
+    /**
+     * Get a set of sentences from table <b>sentences</b> up to the given maximum in limit,
+     * stored as {@link model.CompactSentenceList}
+     *
+     * @param limit Limits the query to the given amount
+     * @return Contains the returned sentences
+     * @throws SQLException Thrown, if query failed
+     */
+    public CompactSentenceList getCompactSentences(int limit) throws SQLException {
+        if(limit < 1) {
+            throw new SQLException("Given limit is out of range");
+        }
+        if(this.connect.isClosed()) {
+            this.connect();
+        }
+
+        Statement statement = connect.createStatement();
+
+        String query = "SELECT s_id, sentence FROM sentences ORDER BY s_id limit " + limit;
+        ResultSet result =  statement.executeQuery(query);
+        System.out.println("Preprocessing Sentences");
+        CompactSentenceList sentenceList = new CompactSentenceList(result, opt);
+        result.close();
+        return sentenceList;
+    }
+
+    /**
+     * Gets the complete set of sentences from table <b>sentences</b>, stored as {@link model.CompactSentenceList}
+     * Table must exists in given database. The sentences are ordered by s_id,
+     * so the workers of a sharded similarity calculation get the same rows.
+     *
+     * @return Contains the returned sentences
+     * @throws SQLException Thrown, if query failed
+     */
+    public CompactSentenceList getCompactSentences() throws SQLException {
+        if(this.connect.isClosed()){
+            this.connect();
+        }
+
+        Statement statement = connect.createStatement();
+
+        String query = "SELECT s_id, sentence FROM sentences ORDER BY s_id";
+        ResultSet result =  statement.executeQuery(query);
+
+        System.out.println("Preprocessing Sentences");
+        CompactSentenceList sentenceList = new CompactSentenceList(result, opt);
+        result.close();
+        return sentenceList;
+    }
+
+    /**
+     * Streams the complete set of sentences from table <b>sentences</b> row by row.
+     * The MySQL driver reads a row only when it is needed instead of the whole result,
+     * see fetch size Integer.MIN_VALUE of Connector/J.
+     * No other query can be executed on this connection until the ResultSet is closed.
+     * Table must exists in given database
+     *
+     * @return ResultSet with the columns s_id and sentence
+     * @throws SQLException Thrown, if query failed
+     */
+    public ResultSet streamSentences() throws SQLException {
+        if(this.connect.isClosed()){
+            this.connect();
+        }
+
+        Statement statement = connect.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(Integer.MIN_VALUE);
+        return statement.executeQuery("SELECT s_id, sentence FROM sentences");
+    }
+
     /**
      * Gets the complete set of sentences from table <b>sentences</b>
      * Table must exists in given database
@@ -379,11 +462,79 @@ public class SqlObject {
                 " PRIMARY KEY (`s_id_1`,`s_id_2`));");// +
                 //" ENGINE=InnoDB DEFAULT CHARSET=latin1;");
 
+        this.createTable(CREATE_SIMILARITY_STATE);
+
+    }
+
+    /**
+     * Gets the highest sentence ID contained in table sentence_similarity by the last run.
+     * The watermark is only returned, if the last run used the same options and rare words.
+     *
+     * @param fingerprint Fingerprint of this run, see {@link similarity.SimilarityMatrix#getResultFingerprint()}
+     * @return Highest sentence ID or -1, if there was no complete run yet or it used other options or rare words
+     * @throws SQLException Thrown, if query failed
+     */
+    public long getSimilarityWatermark(long fingerprint) throws SQLException {
+        if(this.connect.isClosed()){
+            this.connect();
+        }
+
+        Statement statement = connect.createStatement();
+        ResultSet result = statement.executeQuery("SELECT name, value FROM similarity_state WHERE name IN ('watermark', 'fingerprint')");
+        long watermark = -1;
+        boolean sameFingerprint = false;
+        while (result.next()) {
+            if (result.getString("name").equals("watermark")) {
+                watermark = result.getLong("value");
+            } else {
+                sameFingerprint = (result.getLong("value") == fingerprint);
+            }
+        }
+        result.close();
+        return sameFingerprint ? watermark : -1;
+    }
+
+    /**
+     * Stores the highest sentence ID contained in table sentence_similarity
+     * together with the fingerprint of the options and rare words of the run
+     *
+     * @param watermark Highest sentence ID
+     * @param fingerprint Fingerprint of the run, see {@link similarity.SimilarityMatrix#getResultFingerprint()}
+     * @throws SQLException Thrown, if query failed
+     */
+    public void setSimilarityWatermark(long watermark, long fingerprint) throws SQLException {
+        if(this.connect.isClosed()){
+            this.connect();
+        }
+
+        PreparedStatement preparedStatement = connect.prepareStatement("INSERT INTO similarity_state (name, value) VALUES ('watermark', ?), ('fingerprint', ?) ON DUPLICATE KEY UPDATE value=VALUES(value)");
+        preparedStatement.setLong(1, watermark);
+        preparedStatement.setLong(2, fingerprint);
+        preparedStatement.executeUpdate();
+        preparedStatement.close();
+    }
+
+    /**
+     * Removes the watermark, so the next run computes all similarities
+     *
+     * @throws SQLException Thrown, if query failed
+     */
+    public void resetSimilarityWatermark() throws SQLException {
+        if(this.connect.isClosed()){
+            this.connect();
+        }
+
+        // the word counts may be inserted into a database, which was never prepared
+        this.createTable(CREATE_SIMILARITY_STATE);
+        Statement statement = connect.createStatement();
+        statement.executeUpdate("DELETE FROM similarity_state WHERE name IN ('watermark', 'fingerprint')");
+        statement.close();
     }
 
     /**
      * Inserts a given word list into the table <b>word_frequency</b>
-     * Table must exists in given database
+     * Table must exists in given database.
+     * The rare words may change with the counts, so the watermark of the similarities is removed.
      *
      * @param wordlist Hashmap with words and frequency count
      * @throws SQLException Thrown, if query failed
@@ -393,16 +544,17 @@ public class SqlObject {
         if(wordlist.isEmpty()) {
             throw new SQLException("Given WordList is empty. Nothing to commit");
         }
-        if(this.connect.isClosed()){
-            this.connect();
-        }
+        resetSimilarityWatermark();
 
         this.connect.setAutoCommit(false);
+        BatchEvent event = Metrics.getInstance().startBatch();
+        long bytes = 0;
         PreparedStatement preparedStatement = connect.prepareStatement("INSERT INTO word_frequency (word, frequency) VALUES (?,?) ON DUPLICATE KEY UPDATE frequency=VALUES(frequency)");
         for (String word: wordlist.keySet()) {
             preparedStatement.setString(1, word);
             preparedStatement.setLong(2, wordlist.get(word));
             preparedStatement.addBatch();
+            bytes += word.length() + 8;
         }
         if(this.connect.isClosed()){
             this.connect();
@@ -413,46 +565,65 @@ public class SqlObject {
         }
         this.connect.commit();
         this.connect.setAutoCommit(true);
+        Metrics.getInstance().endBatch(event, "word_frequency", wordlist.size(), bytes);
     }
 
     /**
      * Inserts a new column into table sentence_similarity
      * Table must exists in given database
+     * The entries are committed in batches of similarityBatchSize rows
      *
      * @param similarityMatrix Matrix with similarities returned by {@link similarity.SimilarityMatrix}
      * @throws SQLException Thrown, if query failed
      */
     public void insertSentenceSimilarities(SimilarityMatrix similarityMatrix) throws SQLException {
 
-        List<SimilarityEntry> matrix = similarityMatrix.getSimilarityMatrix();
+        SimilarityResults matrix = similarityMatrix.getSimilarityMatrix();
 
         if(matrix.size() <= 0) {
            throw new SQLException("The given matrix is invalid");
         }
 
-        if(this.connect.isClosed()){
-            this.connect();
+        SimilarityBatchWriter writer = similarityWriter();
+        try {
+            matrix.writeTo(writer);
+            writer.close();
+        } catch (IOException e) {
+            throw new SQLException(e);
         }
+    }
 
-        this.connect.setAutoCommit(false);
-        PreparedStatement preparedStatement = connect.prepareStatement("INSERT INTO sentence_similarity (s_id_1, s_id_2, similarity) VALUES (?,?,?) ON DUPLICATE KEY UPDATE similarity=values(similarity)");
-
-        for(SimilarityEntry s: matrix){
-            preparedStatement.setInt(1, s.sentenceId_1);
-            preparedStatement.setInt(2, s.sentenceId_2);
-            preparedStatement.setFloat(3, s.similarity);
-            preparedStatement.addBatch();
-        }
-        if(this.connect.isClosed()){
-            this.connect();
+    /**
+     * Inserts all entries of a spill file written by {@link similarity.SimilarityFileSink} into table sentence_similarity
+     * Table must exists in given database
+     *
+     * @param spillFile File with the entries
+     * @return Number of inserted entries
+     * @throws SQLException Thrown, if query failed or the file could not be read
+     */
+    public long insertSentenceSimilarities(File spillFile) throws SQLException {
+        SimilarityBatchWriter writer = similarityWriter();
+        try {
+            long count = SimilarityFileSink.read(spillFile, writer);
+            writer.close();
+            return count;
+        } catch (IOException e) {
+            throw new SQLException(e);
         }
+    }
 
-        preparedStatement.executeBatch();
+    /**
+     * Creates a writer, which inserts entries into table sentence_similarity in batches of similarityBatchSize rows.
+     * The writer must be closed to commit the last batch.
+     *
+     * @return Writer for table sentence_similarity
+     * @throws SQLException Thrown, if the statement could not be prepared
+     */
+    public SimilarityBatchWriter similarityWriter() throws SQLException {
         if(this.connect.isClosed()){
             this.connect();
         }
-        this.connect.commit();
-        this.connect.setAutoCommit(true);
+        return new SimilarityBatchWriter(this.connect, opt.getSimilarityBatchSize());
     }
 
     /**
@@ -0,0 +1,188 @@
+package tests;
+
+import model.CompactSentenceList;
+import model.Options;
+import model.Sentence;
+import model.SentenceList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sql.SqlObject;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SentenceTest {
+
+    private SqlObject db_test = null;
+
+    private Properties properties;
+
+    /**
+     * Sentences with all punctuation marks and cleanup rules
+     */
+    private static final String[] SENTENCES = {
+            "Der Bürgermeister sagte am Montag: \"Wir haben 12:30 Uhr.\"",
+            "-Jahr Bund: :x Zeit. 1998. 12. A-b. 12345678901.",
+            "a -> b -%> c -(> d-->e",
+            "Straße  und   Öl    über",
+            "12:30 Folgewort: x Folge.",
+            "(AFP) 10% & Nord-Süd."
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        FileInputStream file =  new FileInputStream("credentials.properties");
+        BufferedInputStream stream = new BufferedInputStream(file);
+        this.properties = new Properties();
+        properties.load(stream);
+        stream.close();
+
+        String server = properties.getProperty("server");
+        int port = Integer.parseInt(properties.getProperty("port"));
+        String user = properties.getProperty("user");
+        String pass = properties.getProperty("pass");
+        String testdb = properties.getProperty("testdb_unit_tests");
+        db_test = new SqlObject(server, port, user, pass, testdb, new Options(properties));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db_test.close();
+    }
+
+    /**
+     * @return Options of the test properties with the given filter, editUmlauts and tokenizer
+     */
+    private Options options(String filter, String umlauts, String tokenizer) throws Exception {
+        Properties modified = (Properties) properties.clone();
+        modified.setProperty("filter", filter);
+        modified.setProperty("editUmlauts", umlauts);
+        modified.setProperty("tokenizer", tokenizer);
+        return new Options(modified);
+    }
+
+    /**
+     * Splits the sentence with both tokenizers and compares their words to the expected words
+     */
+    private void assertWords(String filter, String umlauts, String sentence, String... words) throws Exception {
+        for (String tokenizer : new String[]{"regex", "scan"}) {
+            Sentence s = new Sentence(1, sentence, options(filter, umlauts, tokenizer));
+            assertEquals("Should be the golden words of tokenizer " + tokenizer, Arrays.asList(words), s);
+        }
+    }
+
+    @Test
+    public void testGoldenWords() throws Exception {
+        assertWords("off", "false", SENTENCES[0], "Der", "Bürgermeister", "sagte", "am", "Montag", "Wir", "haben", "Uhr.");
+        assertWords("off", "false", SENTENCES[1], "Jahr", "Bund", "x", "Zeit", "1998", "12.", "A-b", "12345678901.");
+        assertWords("off", "false", SENTENCES[2], "b", "->", "d-e");
+        assertWords("off", "false", SENTENCES[3], "Straße", "und", "Öl", "über");
+        assertWords("off", "false", SENTENCES[4], "Folgewort:", "Folge.");
+        assertWords("off", "false", SENTENCES[5], "AFP", "10", "Nord-Süd.");
+
+        assertWords("ignoreCases", "true", SENTENCES[0], "der", "buergermeister", "sagte", "am", "montag", "wir", "haben", "uhr.");
+        assertWords("ignoreCases", "true", SENTENCES[3], "strasse", "und", "oel", "ueber");
+        assertWords("ignoreCases", "true", SENTENCES[5], "afp", "10", "nord-sued");
+        assertWords("onlyNouns", "true", SENTENCES[5], "AFP", "10", "Nord-Sued");
+    }
+
+    @Test
+    public void testScanMatchesRegexOnGeneratedSentences() throws Exception {
+        String alphabet = "aAzZ09_ -->:..\"?!,;()[]{}%&+ÄÖÜäöüßé\t";
+        String[] words = {"12:30", "-abc", "->", ":x", "x:", ":", "abc.", "a-b.", "1234.", "12.", "  ", "%->", "-(>"};
+        Random random = new Random(42);
+        List<String> sentences = new ArrayList<String>();
+        for (int s = 0; s < 20000; s++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int k = 0; k < length; k++) {
+                if (random.nextInt(4) == 0) {
+                    sb.append(words[random.nextInt(words.length)]);
+                } else {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            sentences.add(sb.toString());
+        }
+        assertSameWords(sentences);
+    }
+
+    @Test
+    public void testScanMatchesRegexOnTestDatabase() throws Exception {
+        ResultSet result = db_test.executeQuery("SELECT sentence FROM sentences limit 10000");
+        List<String> sentences = new ArrayList<String>();
+        while (result.next()) {
+            sentences.add(result.getString("sentence"));
+        }
+        result.close();
+        assertSameWords(sentences);
+    }
+
+    @Test
+    public void testCompactSentenceListMatchesSentenceList() throws Exception {
+        SentenceList sentenceList = db_test.getSentences(10000);
+        CompactSentenceList compact = db_test.getCompactSentences(10000);
+        assertEquals("Should be the same size", sentenceList.size(), compact.size());
+        for (int i = 0; i < sentenceList.size(); i++) {
+            Sentence expected = sentenceList.get(i);
+            assertEquals("Should be the same words", expected, compact.get(i));
+            assertEquals("Should be the same id", expected.getId(), compact.getId(i));
+            assertEquals("Should be the same length", expected.getInitiallength(), compact.getInitiallength(i));
+            for (int k = 0; k < expected.size(); k++) {
+                assertEquals("Should be the word of the id", expected.get(k), compact.getWord(compact.getWordId(i, k)));
+            }
+        }
+        assertEquals("Should be the same sentences", sentenceList, compact.toSentenceList());
+    }
+
+    @Test
+    public void testParallelPreprocessingKeepsOrder() throws Exception {
+        Properties modified = (Properties) properties.clone();
+        modified.setProperty("preprocessingParallelism", "4");
+        modified.setProperty("preprocessingQueueDepth", "2");
+        SqlObject parallel = new SqlObject(properties.getProperty("server"), Integer.parseInt(properties.getProperty("port")),
+                properties.getProperty("user"), properties.getProperty("pass"),
+                properties.getProperty("testdb_unit_tests"), new Options(modified));
+        try {
+            assertEquals("Should be the same sentences in the same order",
+                    db_test.getSentences(10000), parallel.getSentences(10000));
+            assertEquals("Should be the same sentences in the same order",
+                    db_test.getCompactSentences(10000).toSentenceList(), parallel.getCompactSentences(10000).toSentenceList());
+        } finally {
+            parallel.close();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCompactSentenceListIsReadOnly() throws Exception {
+        CompactSentenceList compact = db_test.getCompactSentences(1);
+        compact.get(0).set(0, "changed");
+    }
+
+    /**
+     * Compares the words and lengths of both tokenizers with every filter
+     */
+    private void assertSameWords(List<String> sentences) throws Exception {
+        for (String filter : new String[]{"off", "ignoreCases", "onlyNouns"}) {
+            for (String umlauts : new String[]{"false", "true"}) {
+                Options regex = options(filter, umlauts, "regex");
+                Options scan = options(filter, umlauts, "scan");
+                for (String sentence : sentences) {
+                    Sentence expected = new Sentence(1, sentence, regex);
+                    Sentence actual = new Sentence(1, sentence, scan);
+                    assertEquals("Should be the same words of \"" + sentence + "\"", expected, actual);
+                    assertEquals("Should be the same length", expected.getInitiallength(), actual.getInitiallength());
+                }
+            }
+        }
+    }
+}
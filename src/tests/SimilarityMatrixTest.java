@@ -1,24 +1,48 @@
 package tests;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import metrics.Metrics;
 import model.Options;
 import model.Sentence;
 import model.SentenceList;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import similarity.EncodedSentenceList;
+import similarity.MinHashLsh;
+import similarity.SimilarityCheckpoint;
 import similarity.SimilarityEntry;
+import similarity.SimilarityEstimate;
+import similarity.SimilarityFileSink;
 import similarity.SimilarityMatrix;
+import similarity.SimilarityMeasures;
+import similarity.SimilarityResults;
+import similarity.SimilaritySink;
+import similarity.SimilarityStatistics;
+import similarity.WordDictionary;
 import sql.SqlObject;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.TreeSet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SimilarityMatrixTest {
 
@@ -85,6 +109,530 @@ public class SimilarityMatrixTest {
         }
     }
 
+    /**
+     * Calculates a matrix with the test properties and the given key/value pairs
+     */
+    private SimilarityMatrix calculate(SentenceList slist, String... settings) throws Exception {
+        Properties modified = (Properties) properties.clone();
+        for (int i = 0; i < settings.length; i += 2) {
+            modified.setProperty(settings[i], settings[i + 1]);
+        }
+        SimilarityMatrix matrix = new SimilarityMatrix(slist, new Options(modified));
+        matrix.calculateSimilarity();
+        return matrix;
+    }
+
+    /**
+     * Compares entries, similarities and distribution of two matrices
+     */
+    private void assertSameMatrix(SimilarityMatrix reference, SimilarityMatrix actual) {
+        List<SimilarityEntry> expected = reference.getSimilarityMatrix();
+        List<SimilarityEntry> result = actual.getSimilarityMatrix();
+        assertEquals("Should be the same size", expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Should be the same pair", expected.get(i), result.get(i));
+            assertEquals("Should be the same similarity", expected.get(i).similarity, result.get(i).similarity);
+        }
+        assertEquals("Should be the same distribution", reference.similarityDistribution(10), actual.similarityDistribution(10));
+    }
+
+    @Test
+    public void testIndexModeMatchesBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "strings");
+        assertSameMatrix(reference, calculate(slist, "similarityMode", "index"));
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityParallelism", "1");
+        assertSameMatrix(reference, calculate(slist, "similarityMode", "bruteforce", "similarityParallelism", "4"));
+        assertSameMatrix(reference, calculate(slist, "similarityMode", "index", "similarityParallelism", "4"));
+    }
+
+    @Test
+    public void testIdKernelMatchesStringKernel() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "strings");
+        assertSameMatrix(reference, calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "ids"));
+    }
+
+    @Test
+    public void testBitsetKernelMatchesStringKernel() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "strings");
+        assertSameMatrix(reference, calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "bitset"));
+        assertSameMatrix(reference, calculate(slist, "similarityMode", "index", "similarityKernel", "bitset"));
+    }
+
+    @Test
+    public void testEarlyExitKernelMatchesStringKernel() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        for (String threshold : new String[]{"0.0", "0.5", "0.7"}) {
+            SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "strings", "similarityThreshold", threshold);
+            assertSameMatrix(reference, calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "earlyexit", "similarityThreshold", threshold));
+        }
+    }
+
+    @Test
+    public void testJoinModeMatchesBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        for (String threshold : new String[]{"0.3", "0.5", "0.7"}) {
+            SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", threshold);
+            assertSameMatrix(reference, calculate(slist, "similarityMode", "join", "similarityThreshold", threshold));
+        }
+    }
+
+    @Test
+    public void testWindowModeMatchesBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        for (String threshold : new String[]{"0.3", "0.5", "0.7"}) {
+            SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", threshold);
+            assertSameMatrix(reference, calculate(slist, "similarityMode", "window", "similarityThreshold", threshold));
+        }
+    }
+
+    @Test
+    public void testMeasuresPruneLikeBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        for (String measure : new String[]{"jaccard", "overlap", "cosine"}) {
+            for (String threshold : new String[]{"0.3", "0.5", "0.7"}) {
+                SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "ids",
+                        "similarityMeasure", measure, "similarityThreshold", threshold);
+                for (String mode : new String[]{"index", "join", "window"}) {
+                    assertSameMatrix(reference, calculate(slist, "similarityMode", mode, "similarityKernel", "ids",
+                            "similarityMeasure", measure, "similarityThreshold", threshold));
+                }
+                assertSameMatrix(reference, calculate(slist, "similarityMode", "bruteforce", "similarityKernel", "earlyexit",
+                        "similarityMeasure", measure, "similarityThreshold", threshold));
+            }
+        }
+    }
+
+    @Test
+    public void testEstimateCoversBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", "0.3");
+        Properties modified = (Properties) properties.clone();
+        modified.setProperty("similarityThreshold", "0.3");
+        SimilarityEstimate estimate = new SimilarityMatrix(slist, new Options(modified)).estimateSimilarity(100000, 10);
+
+        assertEquals("Should sample all pairs", 100000, estimate.getSamples());
+        double[] count = estimate.getCountInterval();
+        assertTrue("Should contain the expected count", count[0] <= estimate.getExpectedCount() && estimate.getExpectedCount() <= count[1]);
+        assertTrue("Should contain the real count", count[0] <= reference.getSimilarityCount() && reference.getSimilarityCount() <= count[1]);
+        double sum = 0.0;
+        for (double frequency : estimate.getDistribution()) {
+            sum += frequency;
+        }
+        assertEquals("Should be normalized", 1.0, sum, 1e-9);
+        assertTrue("Should estimate a runtime", estimate.getExpectedRuntime() > 0.0);
+    }
+
+    @Test
+    public void testStatisticsCountEveryPair() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix matrix = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", "0.3");
+        SimilarityStatistics statistics = matrix.getStatistics();
+        SimilarityResults entries = matrix.getSimilarityMatrix();
+
+        long pairs = ((long) slist.size() * (slist.size() - 1)) / 2;
+        assertEquals("Should count every pair", pairs, statistics.getPairs());
+        assertEquals("Should count every entry", entries.size(), statistics.getCount());
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        long[] counts = new long[10];
+        counts[0] = statistics.getRejected();
+        for (int row = 0; row < entries.size(); row++) {
+            float similarity = entries.getSimilarity(row);
+            min = Math.min(min, similarity);
+            max = Math.max(max, similarity);
+            int position = (int) (similarity * 10);
+            counts[(position == 10) ? 9 : position]++;
+        }
+        if (entries.size() > 0) {
+            assertEquals("Should be the smallest similarity", min, statistics.getMin(), 0.0f);
+            assertEquals("Should be the largest similarity", max, statistics.getMax(), 0.0f);
+        }
+        List<Double> distribution = matrix.similarityDistribution(10);
+        for (int position = 0; position < 10; position++) {
+            assertEquals("Should be the same frequency", counts[position] / (double) pairs, distribution.get(position), 0.0);
+        }
+
+        // tiles of several threads are merged into the same statistics
+        SimilarityStatistics parallel = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", "0.3",
+                "similarityParallelism", "4").getStatistics();
+        assertEquals("Should be the same distribution", distribution, parallel.distribution(10));
+        assertEquals("Should be the same mean", statistics.getMean(), parallel.getMean(), 1e-9);
+
+        // a finer granularity than the histogram is counted from the entries
+        List<Double> fine = matrix.similarityDistribution(SimilarityStatistics.MAX_GRANULARITY + 50);
+        assertEquals("Should have every data point", SimilarityStatistics.MAX_GRANULARITY + 50, fine.size());
+        double sum = 0.0;
+        for (double frequency : fine) {
+            sum += frequency;
+        }
+        assertEquals("Should sum up to one", 1.0, sum, 1e-9);
+    }
+
+    @Test
+    public void testMetricsReachAllPairs() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        long pairs = ((long) slist.size() * (slist.size() - 1)) / 2;
+        Metrics metrics = Metrics.getInstance();
+        for (String mode : new String[]{"bruteforce", "index", "join", "window", "lsh"}) {
+            for (String parallelism : new String[]{"1", "4"}) {
+                SimilarityMatrix matrix = calculate(slist, "similarityMode", mode, "similarityThreshold", "0.3",
+                        "similarityParallelism", parallelism);
+                assertEquals("Should know all pairs in mode " + mode, pairs, metrics.getPairsTotal());
+                assertEquals("Should have done all pairs in mode " + mode, pairs, metrics.getPairsDone());
+                assertEquals("Should have found all similarities in mode " + mode, matrix.getSimilarityCount(), metrics.getResultsFound());
+                assertTrue("Should not score more than all pairs", metrics.getCandidates() <= pairs);
+                assertEquals("Should be finished", 0, metrics.getEtaSeconds());
+            }
+        }
+        SimilarityMatrix collapsed = calculate(slist, "similarityMode", "index", "similarityDedup", "true");
+        assertEquals("Should have done all pairs of the duplicates", pairs, metrics.getPairsDone());
+        assertEquals("Should have found all similarities of the duplicates", collapsed.getSimilarityCount(), metrics.getResultsFound());
+    }
+
+    @Test
+    public void testChunkEventsCoverAllPairs() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        long pairs = ((long) slist.size() * (slist.size() - 1)) / 2;
+        File recordingFile = File.createTempFile("similarities", ".jfr");
+        recordingFile.deleteOnExit();
+
+        Recording recording = new Recording();
+        recording.enable("rarewords.SimilarityChunk");
+        recording.start();
+        calculate(slist, "similarityMode", "index", "similarityThreshold", "0.3", "similarityParallelism", "4");
+        recording.stop();
+        recording.dump(recordingFile.toPath());
+        recording.close();
+
+        long chunkPairs = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())) {
+            if (event.getEventType().getName().equals("rarewords.SimilarityChunk")) {
+                chunkPairs += event.getLong("pairs");
+            }
+        }
+        assertEquals("Should record every pair in a chunk", pairs, chunkPairs);
+    }
+
+    @Test
+    public void testTopKIsSubsetOfBruteForce() throws Exception {
+        final int k = 3;
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", "0.3");
+        SimilarityMatrix topK = calculate(slist, "similarityTopK", String.valueOf(k), "similarityThreshold", "0.3");
+
+        SimilarityResults all = reference.getSimilarityMatrix();
+        SimilarityResults best = topK.getSimilarityMatrix();
+        assertTrue("Should keep at most n*k entries", best.size() <= slist.size() * k);
+        for (int row = 0; row < best.size(); row++) {
+            int found = all.indexOf(best.getSentenceId1(row), best.getSentenceId2(row));
+            assertTrue("Should be above the threshold", found >= 0);
+            assertEquals("Should be the same similarity", all.getSimilarity(found), best.getSimilarity(row), 0.0f);
+        }
+
+        // the k best partners of every sentence, ties broken by the position of the partner
+        final HashMap<Integer, Integer> positions = new HashMap<Integer, Integer>();
+        for (int i = 0; i < slist.size(); i++) {
+            positions.put(slist.get(i).getId(), i);
+        }
+        HashMap<Integer, List<long[]>> partners = new HashMap<Integer, List<long[]>>();
+        for (int row = 0; row < all.size(); row++) {
+            int id1 = all.getSentenceId1(row);
+            int id2 = all.getSentenceId2(row);
+            long bits = Float.floatToIntBits(all.getSimilarity(row));
+            addPartner(partners, id1, new long[]{bits, positions.get(id2), row});
+            addPartner(partners, id2, new long[]{bits, positions.get(id1), row});
+        }
+        TreeSet<Long> expected = new TreeSet<Long>();
+        for (List<long[]> list : partners.values()) {
+            Collections.sort(list, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    int bySimilarity = Float.compare(Float.intBitsToFloat((int) b[0]), Float.intBitsToFloat((int) a[0]));
+                    return (bySimilarity != 0) ? bySimilarity : Long.compare(a[1], b[1]);
+                }
+            });
+            for (int p = 0; p < Math.min(k, list.size()); p++) {
+                expected.add(all.getKey((int) list.get(p)[2]));
+            }
+        }
+        TreeSet<Long> kept = new TreeSet<Long>();
+        for (int row = 0; row < best.size(); row++) {
+            kept.add(best.getKey(row));
+        }
+        assertFalse("Should find partners", expected.isEmpty());
+        assertEquals("Should keep exactly the k best partners of every sentence", expected, kept);
+        assertEquals("Should keep every pair once", kept.size(), best.size());
+    }
+
+    private static void addPartner(HashMap<Integer, List<long[]>> partners, int id, long[] partner) {
+        List<long[]> list = partners.get(id);
+        if (list == null) {
+            list = new ArrayList<long[]>();
+            partners.put(id, list);
+        }
+        list.add(partner);
+    }
+
+    @Test
+    public void testDedupMatchesBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        // duplicate every fourth sentence under a new ID
+        SentenceList duplicated = new SentenceList(slist.size() * 2);
+        duplicated.addAll(slist);
+        for (int i = 0; i < slist.size(); i += 4) {
+            Sentence sentence = slist.get(i);
+            duplicated.add(new Sentence(sentence.getId() + 1000000, sentence.getInitiallength(), sentence));
+        }
+        SimilarityMatrix reference = calculate(duplicated, "similarityMode", "bruteforce");
+        assertSameMatrix(reference, calculate(duplicated, "similarityMode", "bruteforce", "similarityDedup", "true"));
+        assertSameMatrix(reference, calculate(duplicated, "similarityMode", "join", "similarityDedup", "true"));
+    }
+
+    @Test
+    public void testLshModeIsSubsetOfBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityMatrix reference = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", "0.3");
+        SimilarityMatrix lsh = calculate(slist, "similarityMode", "lsh", "similarityThreshold", "0.3",
+                "similarityLshBands", "30", "similarityLshRows", "2");
+
+        SimilarityResults all = reference.getSimilarityMatrix();
+        SimilarityResults found = lsh.getSimilarityMatrix();
+        int previous = -1;
+        for (int row = 0; row < found.size(); row++) {
+            int position = all.indexOf(found.getSentenceId1(row), found.getSentenceId2(row));
+            assertTrue("Should be above the threshold", position >= 0);
+            assertTrue("Should keep the order of the brute force loop", position > previous);
+            assertEquals("Should be the same similarity", all.getSimilarity(position), found.getSimilarity(row), 0.0f);
+            previous = position;
+        }
+    }
+
+    @Test
+    public void testLshRejectsTooManySignatures() throws Exception {
+        EncodedSentenceList encoded = new EncodedSentenceList(db_test.getSentences(200), new WordDictionary());
+        try {
+            new MinHashLsh(encoded, 50000, 50000, 1L);
+            fail("Should reject more signature slots than an array holds");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Should name the bands", e.getMessage().contains("similarityLshBands"));
+        }
+    }
+
+    @Test
+    public void testLshRecallMatchesBruteForce() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityResults all = calculate(slist, "similarityMode", "bruteforce", "similarityThreshold", "0.3",
+                "similarityMeasure", "jaccard").getSimilarityMatrix();
+        assertTrue("Should have pairs above the threshold", all.size() > 0);
+        // MinHash estimates the jaccard similarity
+        EncodedSentenceList encoded = new EncodedSentenceList(slist, new WordDictionary(),
+                SimilarityMeasures.forName("jaccard"));
+
+        // few bands miss pairs, the recall of a sample of all sentences is the share of the pairs found
+        MinHashLsh lsh = new MinHashLsh(encoded, 4, 5, 1L);
+        SimilarityResults found = lsh.join(0.3);
+        double recall = lsh.recall(0.3, slist.size(), 1L);
+        assertEquals("Should sample every pair from both sentences", 2L * all.size(), lsh.getSampledPairs());
+        assertEquals("Should count every found pair from both sentences", 2L * found.size(), lsh.getSampledHits());
+        assertEquals("Should be the share of the pairs found", found.size() / (double) all.size(), recall, 1e-12);
+
+        // many bands of few rows find nearly every pair
+        MinHashLsh wide = new MinHashLsh(encoded, 30, 2, 1L);
+        SimilarityResults nearlyAll = wide.join(0.3);
+        assertTrue("Should find nearly all pairs", nearlyAll.size() >= 0.9 * all.size());
+        assertEquals("Should be the share of the pairs found", nearlyAll.size() / (double) all.size(),
+                wide.recall(0.3, slist.size(), 1L), 1e-12);
+    }
+
+    @Test
+    public void testShardsMatchSingleProcess() throws Exception {
+        final int shards = 3;
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityResults expected = calculate(slist, "similarityMode", "index").getSimilarityMatrix();
+
+        SimilarityResults merged = new SimilarityResults();
+        int lastId = -1;
+        for (int shard = 0; shard < shards; shard++) {
+            SimilarityMatrix matrix = calculate(slist, "similarityMode", "index",
+                    "similarityShards", String.valueOf(shards), "similarityShard", String.valueOf(shard));
+            merged.addAll(matrix.getSimilarityMatrix());
+
+            // the sentences are ordered by s_id, so the shards cover ascending ranges of IDs
+            int[] ids = matrix.getShardIds(shard);
+            assertTrue("Should start behind the last shard", ids[0] > lastId);
+            assertTrue("Should end behind its start", ids[1] >= ids[0]);
+            lastId = ids[1];
+        }
+        assertEquals("Should be the same size", expected.size(), merged.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals("Should be the same pair", expected.getKey(row), merged.getKey(row));
+            assertEquals("Should be the same similarity", expected.getSimilarity(row), merged.getSimilarity(row), 0.0f);
+        }
+    }
+
+    @Test
+    public void testSinkRejectsCollectingModes() throws Exception {
+        String[][] collecting = {{"similarityMode", "join"}, {"similarityMode", "window"}, {"similarityMode", "lsh"},
+                {"similarityTopK", "3"}, {"incrementalSimilarities", "true"}, {"similarityDedup", "true"}};
+        for (String sink : new String[]{"jdbc", "file"}) {
+            for (String[] setting : collecting) {
+                Properties modified = (Properties) properties.clone();
+                modified.setProperty("similaritySink", sink);
+                modified.setProperty(setting[0], setting[1]);
+                try {
+                    new Options(modified);
+                    fail("Should reject " + setting[0] + "=" + setting[1] + " with sink " + sink);
+                } catch (Exception e) {
+                    assertTrue("Should name the sink", e.getMessage().contains("similaritySink"));
+                }
+            }
+        }
+
+        // the workers of a sharded join compute indexed
+        Properties sharded = (Properties) properties.clone();
+        sharded.setProperty("similaritySink", "file");
+        sharded.setProperty("similarityMode", "join");
+        sharded.setProperty("similarityShards", "3");
+        sharded.setProperty("similarityShard", "1");
+        assertTrue("Should accept a join with shards", new Options(sharded).isJoinMode());
+    }
+
+    @Test
+    public void testShardsRejectIgnoredModes() throws Exception {
+        String[][] ignored = {{"similarityMode", "window"}, {"similarityMode", "lsh"}, {"similarityDedup", "true"},
+                {"similarityTopK", "3"}, {"incrementalSimilarities", "true"}};
+        for (String[] setting : ignored) {
+            Properties modified = (Properties) properties.clone();
+            modified.setProperty("similarityShards", "3");
+            modified.setProperty(setting[0], setting[1]);
+            try {
+                new Options(modified);
+                fail("Should reject " + setting[0] + "=" + setting[1] + " with shards");
+            } catch (Exception e) {
+                assertTrue("Should name the shards", e.getMessage().contains("similarityShards"));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalRejectsIgnoredOptions() throws Exception {
+        String[][] ignored = {{"similarityMode", "join"}, {"similarityMode", "window"}, {"similarityMode", "lsh"},
+                {"similarityTopK", "3"}, {"similarityDedup", "true"}, {"similarityParallelism", "0"}};
+        for (String[] setting : ignored) {
+            Properties modified = (Properties) properties.clone();
+            modified.setProperty("incrementalSimilarities", "true");
+            modified.setProperty(setting[0], setting[1]);
+            try {
+                new Options(modified);
+                fail("Should reject " + setting[0] + "=" + setting[1]);
+            } catch (Exception e) {
+                assertTrue("Should name the incremental mode", e.getMessage().contains("incrementalSimilarities"));
+            }
+        }
+    }
+
+    @Test
+    public void testResultFingerprint() throws Exception {
+        SentenceList slist = db_test.getSentences(50);
+        HashMap<String, Double> rareWords = new HashMap<String, Double>();
+        for (Sentence sentence : slist) {
+            for (String word : sentence) {
+                rareWords.put(word, 1.0);
+            }
+        }
+        long fingerprint = new SimilarityMatrix(slist, rareWords, opt).getResultFingerprint();
+        assertEquals("Should not depend on the sentences", fingerprint,
+                new SimilarityMatrix(db_test.getSentences(60), rareWords, opt).getResultFingerprint());
+
+        Properties modified = (Properties) properties.clone();
+        modified.setProperty("similarityThreshold", "0.123");
+        assertNotEquals("Should depend on the threshold", fingerprint,
+                new SimilarityMatrix(slist, rareWords, new Options(modified)).getResultFingerprint());
+        modified = (Properties) properties.clone();
+        modified.setProperty("similarityMeasure", opt.getSimilarityMeasure().equals("jaccard") ? "cosine" : "jaccard");
+        assertNotEquals("Should depend on the measure", fingerprint,
+                new SimilarityMatrix(slist, rareWords, new Options(modified)).getResultFingerprint());
+
+        rareWords.remove(rareWords.keySet().iterator().next());
+        assertNotEquals("Should depend on the rare words", fingerprint,
+                new SimilarityMatrix(slist, rareWords, opt).getResultFingerprint());
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        SentenceList slist = db_test.getSentences(200);
+        SimilarityResults expected = calculate(slist, "similarityMode", "index", "similarityThreshold", "0.3").getSimilarityMatrix();
+
+        Properties modified = (Properties) properties.clone();
+        modified.setProperty("similarityMode", "index");
+        modified.setProperty("similarityThreshold", "0.3");
+        modified.setProperty("similaritySink", "file");
+        Options fileOpt = new Options(modified);
+        File spillFile = File.createTempFile("similarities", ".bin");
+        File checkpointFile = new File(spillFile.getPath() + ".checkpoint");
+        spillFile.deleteOnExit();
+        checkpointFile.deleteOnExit();
+
+        // stop the first run after two thirds of the entries
+        final long limit = expected.size() * 2 / 3;
+        final SimilarityFileSink firstSink = new SimilarityFileSink(spillFile);
+        SimilarityMatrix first = new SimilarityMatrix(slist, fileOpt);
+        assertFalse("Should start from scratch", first.setCheckpoint(new SimilarityCheckpoint(checkpointFile, 0)));
+        try {
+            first.calculateSimilarity(new SimilaritySink() {
+                private long count = 0;
+
+                @Override
+                public void add(int sentenceId1, int sentenceId2, float similarity) throws IOException {
+                    if (count++ >= limit) {
+                        throw new IOException("Interrupted");
+                    }
+                    firstSink.add(sentenceId1, sentenceId2, similarity);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    firstSink.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    firstSink.close();
+                }
+            });
+            fail("Should be interrupted");
+        } catch (IOException e) {
+            firstSink.close();
+        }
+
+        modified.setProperty("similarityMeasure", "jaccard");
+        SimilarityMatrix otherMeasure = new SimilarityMatrix(slist, new Options(modified));
+        assertFalse("Should not resume with another measure",
+                otherMeasure.setCheckpoint(new SimilarityCheckpoint(checkpointFile, 0)));
+
+        SimilarityCheckpoint checkpoint = new SimilarityCheckpoint(checkpointFile, 0);
+        SimilarityMatrix second = new SimilarityMatrix(slist, fileOpt);
+        assertTrue("Should resume", second.setCheckpoint(checkpoint));
+        SimilarityFileSink.truncate(spillFile, checkpoint.getSimilarityCount());
+        second.calculateSimilarity(new SimilarityFileSink(spillFile, true));
+
+        SimilarityResults result = new SimilarityResults();
+        SimilarityFileSink.read(spillFile, result);
+        assertEquals("Should be the same size", expected.size(), result.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals("Should be the same pair", expected.getKey(row), result.getKey(row));
+            assertEquals("Should be the same similarity", expected.getSimilarity(row), result.getSimilarity(row), 0.0f);
+        }
+    }
+
     @Test
     public void testSimilarityMatrix() throws Exception {
 
@@ -7,10 +7,12 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import similarity.SimilarityEntry;
+import similarity.SimilarityFileSink;
 import similarity.SimilarityMatrix;
 import sql.SqlObject;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -231,6 +233,41 @@ public class SqlObjectTest {
 
     }
 
+    @Test
+    public void testSimilarityWatermark() throws Exception {
+        db_test.prepare();
+        db_test.setSimilarityWatermark(100L, 42L);
+        assertEquals("Should keep the watermark", 100L, db_test.getSimilarityWatermark(42L));
+        assertEquals("Should drop the watermark of other options", -1L, db_test.getSimilarityWatermark(43L));
+
+        // new word counts change the rare words
+        HashMap<String, Long> entries = new HashMap<String, Long>();
+        entries.put("bar", 42L);
+        db_test.insertWordCount(entries);
+        assertEquals("Should drop the watermark after new word counts", -1L, db_test.getSimilarityWatermark(42L));
+        db_test.cleanTable("word_frequency");
+    }
+
+    @Test
+    public void testInsertSentenceSimilaritiesFromSpillFile() throws Exception {
+        db_test.cleanTable("sentence_similarity");
+
+        Options opt = new Options(properties);
+        SentenceList sentenceList = db_test.getSentences(100);
+        SimilarityMatrix similarityMatrix = new SimilarityMatrix(sentenceList, opt);
+        File spillFile = File.createTempFile("similarities", ".bin");
+        spillFile.deleteOnExit();
+        similarityMatrix.calculateSimilarity(new SimilarityFileSink(spillFile));
+
+        long count = db_test.insertSentenceSimilarities(spillFile);
+        assertEquals("Unexpected number of entries", similarityMatrix.getSimilarityCount(), count);
+
+        ResultSet result = db_test.executeQuery("SELECT count(*) FROM sentence_similarity");
+        result.next();
+        assertEquals("Unexpected number of rows", count, result.getLong("count(*)"));
+        db_test.cleanTable("sentence_similarity");
+    }
+
     @Test
     public void testInsertSentenceSimilarities() throws Exception {
         db_test.cleanTable("sentence_similarity");
@@ -1,6 +1,7 @@
 package tests;
 
 import computations.WordCounter;
+import model.CompactSentenceList;
 import model.Options;
 import model.SentenceList;
 import org.junit.After;
@@ -20,6 +21,7 @@ public class WordCounterTest {
 
     private SqlObject db_test = null;
     private Options opt = null;
+    private Properties properties = null;
     private SentenceList sentenceList = null;
 
     private String server = null;
@@ -33,7 +35,7 @@ public class WordCounterTest {
     public void setUp() throws Exception {
         FileInputStream file =  new FileInputStream("credentials.properties");
         BufferedInputStream stream = new BufferedInputStream(file);
-        Properties properties = new Properties();
+        properties = new Properties();
         properties.load(stream);
         stream.close();
         opt = new Options(properties);
@@ -113,4 +115,44 @@ public class WordCounterTest {
             assertEquals("Should be the same size",wordList.size(),wordcount);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompactWordCounter() throws Exception {
+        for (String filter : new String[]{"off", "onlyNouns"}) {
+            Properties modified = (Properties) properties.clone();
+            modified.setProperty("filter", filter);
+            Options filterOpt = new Options(modified);
+            SentenceList slist = db_test.getSentences(10000);
+            CompactSentenceList compact = db_test.getCompactSentences(10000);
+            assertEquals("Should be the same word counts with filter " + filter,
+                    new WordCounter(slist, filterOpt).getWordCounts(), new WordCounter(compact, filterOpt).getWordCounts());
+        }
+    }
+
+    @Test
+    public void testStreamingWordCounter() throws Exception {
+        HashMap<String, Long> expected = new WordCounter(db_test.getSentences(), opt).getWordCounts();
+        ResultSet rows = db_test.streamSentences();
+        try {
+            assertEquals("Should be the same word counts", expected, new WordCounter(rows, opt).getWordCounts());
+        } finally {
+            rows.close();
+        }
+    }
+
+    @Test
+    public void testParallelWordCounter() throws Exception {
+        SentenceList slist = db_test.getSentences(10000);
+        CompactSentenceList compact = db_test.getCompactSentences(10000);
+        HashMap<String, Long> expected = new WordCounter(slist, opt).getWordCounts();
+        for (String parallelism : new String[]{"2", "3", "0"}) {
+            Properties modified = (Properties) properties.clone();
+            modified.setProperty("wordCountParallelism", parallelism);
+            Options parallelOpt = new Options(modified);
+            assertEquals("Should be the same word counts with parallelism " + parallelism,
+                    expected, new WordCounter(slist, parallelOpt).getWordCounts());
+            assertEquals("Should be the same word counts with parallelism " + parallelism,
+                    expected, new WordCounter(compact, parallelOpt).getWordCounts());
+        }
+    }
+}